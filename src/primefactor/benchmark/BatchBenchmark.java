@@ -0,0 +1,59 @@
+package primefactor.benchmark;
+
+import primefactor.util.BigMath;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Compares {@link BigMath#primeFactorsOf(BigInteger, BigInteger, BigInteger)} with its batched variant on numbers of
+ * thousands of digits, over ranges of divisors below and past Integer.MAX_VALUE. Each number is a product of random
+ * primes of CONST_LARGE_FACTOR_BITS bits and of a single prime from the range, which both variants must find.
+ */
+public class BatchBenchmark {
+
+	public static final int[] CONST_DIGITS = {1000, 2000, 4000};
+	public static final long[] CONST_LOWS = {1L << 20, 1L << 40};
+	public static final long CONST_WIDTH = 1L << 20;
+	public static final int CONST_LARGE_FACTOR_BITS = 256;
+	public static final int CONST_PRIME_CERTAINTY = 10;
+
+	public static void run (Benchmark benchmark) throws Exception {
+		final Random random = new Random(0);
+
+		for (int digits: CONST_DIGITS) {
+			for (long lowBound: CONST_LOWS) {
+				final BigInteger low = BigInteger.valueOf(lowBound), high = BigInteger.valueOf(lowBound + CONST_WIDTH);
+				final BigInteger factor = low.add(BigInteger.valueOf((long) (random.nextDouble() * CONST_WIDTH / 2))).nextProbablePrime();
+				final BigInteger n = large(digits, random).multiply(factor);
+
+				if (!BigMath.primeFactorsOf(n, low, high).equals(BigMath.primeFactorsOfBatched(n, low, high, CONST_PRIME_CERTAINTY, () -> false))) {
+					throw new AssertionError(String.format("primeFactorsOf implementations disagree on %d digits", digits));
+				}
+
+				System.out.println(benchmark.measure(String.format("primeFactorsOf.%d.low.2^%d", digits, Long.numberOfTrailingZeros(lowBound)), () -> BigMath.primeFactorsOf(n, low, high)));
+				System.out.println(benchmark.measure(String.format("batched.%d.low.2^%d", digits, Long.numberOfTrailingZeros(lowBound)), () -> BigMath.primeFactorsOfBatched(n, low, high, CONST_PRIME_CERTAINTY, () -> false)));
+			}
+		}
+	}
+
+	/**
+	 * @return a product of random primes of CONST_LARGE_FACTOR_BITS bits having at least digits digits.
+	 */
+	static BigInteger large (int digits, Random random) {
+		final BigInteger limit = BigInteger.TEN.pow(digits - 1);
+		BigInteger result = BigInteger.ONE;
+
+		while (result.compareTo(limit) < 0) {
+			result = result.multiply(BigInteger.probablePrime(CONST_LARGE_FACTOR_BITS, random));
+		}
+
+		return result;
+	}
+
+	public static void main (String[] args) throws Exception {
+		Benchmark.printHeader();
+		run(new Benchmark());
+	}
+
+}
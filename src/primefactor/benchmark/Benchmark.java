@@ -0,0 +1,164 @@
+package primefactor.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A minimal micro-benchmark harness, requiring nothing but the JDK.<br>
+ * An operation is first run for a warm up period, so that the JIT compiler can settle, then timed over a measurement
+ * period. Operations faster than CONST_MIN_SAMPLE_NANOS are timed in batches, so that the cost of
+ * {@link System#nanoTime()} does not distort the results.
+ */
+public class Benchmark {
+
+	public static final long CONST_WARMUP_MILLIS = 2000;
+	public static final long CONST_MEASURE_MILLIS = 3000;
+	public static final long CONST_MIN_SAMPLE_NANOS = 10_000;
+
+	private static final String CONST_HEADER = String.format(
+			"%-40s %14s %12s %12s %12s %12s",
+			"benchmark", "ops/s", "p50 (us)", "p90 (us)", "p99 (us)", "max (us)"
+	);
+
+	/**
+	 * Results of the operations being measured are folded into this field, so that the JIT compiler cannot consider
+	 * them as dead code.
+	 */
+	private static volatile int sink;
+
+	private final long warmupNanos, measureNanos;
+
+	public Benchmark () {
+		this(CONST_WARMUP_MILLIS, CONST_MEASURE_MILLIS);
+	}
+
+	public Benchmark (long warmupMillis, long measureMillis) {
+		this.warmupNanos = TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+		this.measureNanos = TimeUnit.MILLISECONDS.toNanos(measureMillis);
+	}
+
+	/**
+	 * @param name name the result is reported under.
+	 * @param operation operation to measure; its return value is consumed so that it cannot be optimized away.
+	 * @return the throughput and latency distribution of operation.
+	 */
+	public Result measure (String name, Callable<?> operation) throws Exception {
+		final int batch = calibrate(operation);
+		long[] samples = new long[1024];
+		int count = 0;
+		long start, end, sampleStart;
+
+		run(operation, batch, warmupNanos);
+
+		start = System.nanoTime();
+		end = start + measureNanos;
+
+		do {
+			sampleStart = System.nanoTime();
+
+			for (int i = 0; i < batch; i++) {
+				consume(operation.call());
+			}
+
+			if (count == samples.length) {
+				samples = Arrays.copyOf(samples, count * 2);
+			}
+			samples[count++] = (System.nanoTime() - sampleStart) / batch;
+		} while (System.nanoTime() < end);
+
+		return new Result(name, Arrays.copyOf(samples, count), (long) count * batch, System.nanoTime() - start);
+	}
+
+	public static void printHeader () {
+		System.out.println(CONST_HEADER);
+	}
+
+	public static void consume (Object result) {
+		sink += System.identityHashCode(result);
+	}
+
+	/**
+	 * @return the number of times operation has to be run for a sample to last at least CONST_MIN_SAMPLE_NANOS.
+	 */
+	private static int calibrate (Callable<?> operation) throws Exception {
+		int batch = 1;
+		long elapsed;
+
+		while (true) {
+			elapsed = System.nanoTime();
+
+			for (int i = 0; i < batch; i++) {
+				consume(operation.call());
+			}
+
+			elapsed = System.nanoTime() - elapsed;
+
+			if (elapsed >= CONST_MIN_SAMPLE_NANOS || batch >= 1 << 20) {
+				return batch;
+			}
+
+			batch *= 2;
+		}
+	}
+
+	private static void run (Callable<?> operation, int batch, long nanos) throws Exception {
+		final long end = System.nanoTime() + nanos;
+
+		do {
+			for (int i = 0; i < batch; i++) {
+				consume(operation.call());
+			}
+		} while (System.nanoTime() < end);
+	}
+
+	public static class Result {
+
+		private final String name;
+		private final long[] samples;
+		private final long operations, elapsedNanos;
+
+		/**
+		 * @param samples nanoseconds taken by each sampled operation.
+		 */
+		public Result (String name, long[] samples, long operations, long elapsedNanos) {
+			this.name = name;
+			this.samples = samples;
+			this.operations = operations;
+			this.elapsedNanos = elapsedNanos;
+
+			Arrays.sort(this.samples);
+		}
+
+		public String getName () {
+			return name;
+		}
+
+		public double getThroughput () {
+			return operations / (elapsedNanos / 1e9);
+		}
+
+		/**
+		 * @param percentile value between 0 and 100.
+		 * @return the latency in nanoseconds below which percentile percent of the samples fall.
+		 */
+		public long getPercentile (double percentile) {
+			final int index = (int) Math.ceil(percentile / 100 * samples.length) - 1;
+
+			return samples[Math.max(0, Math.min(samples.length - 1, index))];
+		}
+
+		@Override
+		public String toString () {
+			return String.format(
+					Locale.ROOT,
+					"%-40s %14.1f %12.3f %12.3f %12.3f %12.3f",
+					name, getThroughput(),
+					getPercentile(50) / 1e3, getPercentile(90) / 1e3, getPercentile(99) / 1e3, getPercentile(100) / 1e3
+			);
+		}
+
+	}
+
+}
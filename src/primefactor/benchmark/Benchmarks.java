@@ -0,0 +1,51 @@
+package primefactor.benchmark;
+
+/**
+ * Runs every benchmark group, or only those named on the command line among "bigmath", "forkjoin", "batch",
+ * "montgomery", "partition", "loopback" and "sqrt".
+ */
+public class Benchmarks {
+
+	public static void main (String[] args) throws Exception {
+		final Benchmark benchmark = new Benchmark();
+
+		Benchmark.printHeader();
+
+		if (isSelected(args, "bigmath")) {
+			BigMathBenchmark.run(benchmark);
+		}
+		if (isSelected(args, "forkjoin")) {
+			ForkJoinBenchmark.run(benchmark);
+		}
+		if (isSelected(args, "batch")) {
+			BatchBenchmark.run(benchmark);
+		}
+		if (isSelected(args, "montgomery")) {
+			MontgomeryBenchmark.run(benchmark);
+		}
+		if (isSelected(args, "partition")) {
+			PartitionBenchmark.run(benchmark);
+		}
+		if (isSelected(args, "loopback")) {
+			LoopbackBenchmark.run(benchmark);
+		}
+		if (isSelected(args, "sqrt")) {
+			SqrtBenchmark.run(benchmark);
+		}
+	}
+
+	private static boolean isSelected (String[] args, String group) {
+		if (args.length == 0) {
+			return true;
+		}
+
+		for (String arg: args) {
+			if (arg.equalsIgnoreCase(group)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+}
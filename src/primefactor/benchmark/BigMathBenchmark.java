@@ -0,0 +1,73 @@
+package primefactor.benchmark;
+
+import primefactor.util.BigMath;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Measures {@link BigMath#primeFactorsOf(BigInteger)} across digit sizes, for three shapes of input: smooth numbers
+ * (products of primes below CONST_SMOOTH_BOUND), semiprimes with two factors of similar size, and primes.
+ */
+public class BigMathBenchmark {
+
+	public static final int[] CONST_DIGITS = {6, 10, 14};
+	public static final int CONST_SMOOTH_BOUND = 1000;
+
+	public static void run (Benchmark benchmark) throws Exception {
+		final Random random = new Random(0);
+
+		for (int digits: CONST_DIGITS) {
+			final BigInteger smooth = smooth(digits, random);
+			final BigInteger semiprime = semiprime(digits, random);
+			final BigInteger prime = prime(digits, random);
+
+			System.out.println(benchmark.measure(String.format("primeFactorsOf.smooth.%d", digits), () -> BigMath.primeFactorsOf(smooth)));
+			System.out.println(benchmark.measure(String.format("primeFactorsOf.semiprime.%d", digits), () -> BigMath.primeFactorsOf(semiprime)));
+			System.out.println(benchmark.measure(String.format("primeFactorsOf.prime.%d", digits), () -> BigMath.primeFactorsOf(prime)));
+		}
+	}
+
+	/**
+	 * @return a product of random primes below CONST_SMOOTH_BOUND having digits digits.
+	 */
+	static BigInteger smooth (int digits, Random random) {
+		final BigInteger limit = BigInteger.TEN.pow(digits - 1);
+		BigInteger result = BigInteger.ONE, factor;
+
+		while (result.compareTo(limit) < 0) {
+			factor = BigInteger.valueOf(random.nextInt(CONST_SMOOTH_BOUND)).nextProbablePrime();
+
+			if (result.multiply(factor).compareTo(limit.multiply(BigInteger.TEN)) < 0) {
+				result = result.multiply(factor);
+			}
+		}
+
+		return result;
+	}
+
+	static BigInteger semiprime (int digits, Random random) {
+		return prime(digits / 2, random).multiply(prime(digits - digits / 2, random));
+	}
+
+	/**
+	 * @return a random prime having digits digits.
+	 */
+	static BigInteger prime (int digits, Random random) {
+		final BigInteger low = BigInteger.TEN.pow(digits - 1);
+		final BigInteger width = BigInteger.TEN.pow(digits).subtract(low);
+		BigInteger result;
+
+		do {
+			result = new BigInteger(width.bitLength(), random).mod(width).add(low).nextProbablePrime();
+		} while (result.compareTo(low.multiply(BigInteger.TEN)) >= 0);
+
+		return result;
+	}
+
+	public static void main (String[] args) throws Exception {
+		Benchmark.printHeader();
+		run(new Benchmark());
+	}
+
+}
@@ -0,0 +1,39 @@
+package primefactor.benchmark;
+
+import primefactor.util.BigMath;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares {@link BigMath#primeFactorsOf(BigInteger)} with its {@link ForkJoinPool} variant running in the common pool,
+ * on semiprimes with two factors of similar size, whose smallest factor is far enough to be worth splitting the search
+ * for.
+ */
+public class ForkJoinBenchmark {
+
+	public static final int[] CONST_DIGITS = {12, 14, 16};
+
+	public static void run (Benchmark benchmark) throws Exception {
+		final Random random = new Random(0);
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+		for (int digits: CONST_DIGITS) {
+			final BigInteger semiprime = BigMathBenchmark.semiprime(digits, random);
+
+			if (!BigMath.primeFactorsOf(semiprime).equals(BigMath.primeFactorsOf(semiprime, pool))) {
+				throw new AssertionError(String.format("primeFactorsOf implementations disagree on %s", semiprime));
+			}
+
+			System.out.println(benchmark.measure(String.format("primeFactorsOf.semiprime.%d", digits), () -> BigMath.primeFactorsOf(semiprime)));
+			System.out.println(benchmark.measure(String.format("forkJoin.%d.semiprime.%d", pool.getParallelism(), digits), () -> BigMath.primeFactorsOf(semiprime, pool)));
+		}
+	}
+
+	public static void main (String[] args) throws Exception {
+		Benchmark.printHeader();
+		run(new Benchmark());
+	}
+
+}
@@ -0,0 +1,60 @@
+package primefactor.benchmark;
+
+import primefactor.net.MasterClient;
+import primefactor.net.MasterServer;
+import primefactor.net.message.UserToClientMessage;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * Measures a whole MasterClient -> MasterServer -> PrimeFactorsServer round trip over the loopback interface, all the
+ * servers running in the same process.
+ */
+public class LoopbackBenchmark {
+
+	public static final String[] CONST_INPUTS = {
+			"1000036000099", // 1000003 * 1000033
+			"87178291200", // 14!
+	};
+
+	public static void run (Benchmark benchmark) throws Exception {
+		final MasterServer server = new MasterServer(0, false);
+		final Thread serverThread = new Thread(() -> {
+			try {
+				while (true) {
+					server.serveNextClient();
+				}
+			} catch (IOException e) {
+				//The server was closed
+			}
+		});
+		final String address = "localhost" + MasterClient.CONST_ADDRESS_SEP + server.getPort();
+
+		serverThread.setDaemon(true);
+		serverThread.start();
+
+		for (String input: CONST_INPUTS) {
+			final UserToClientMessage.FactorMessage message = new UserToClientMessage.FactorMessage(new BigInteger(input));
+
+			System.out.println(
+					benchmark.measure(
+							String.format("loopback.%s", input),
+							() -> {
+								try (MasterClient client = new MasterClient(address)) {
+									return client.factor(message);
+								}
+							}
+					)
+			);
+		}
+
+		server.close();
+	}
+
+	public static void main (String[] args) throws Exception {
+		Benchmark.printHeader();
+		run(new Benchmark());
+	}
+
+}
@@ -0,0 +1,122 @@
+package primefactor.benchmark;
+
+import primefactor.util.MontgomeryContext;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Compares a step of the iteration of Pollard's rho, x -> x^2 + c mod n followed by q -> q * (x0 - x) mod n, run on
+ * BigInteger and on the residues of a {@link MontgomeryContext}, for moduli from 64 to 1024 bits.<br>
+ * Besides the time a step takes, the bytes it allocates are measured with the per thread allocation counters of
+ * {@link com.sun.management.ThreadMXBean}, over CONST_ALLOCATION_STEPS steps: the Montgomery steps should allocate
+ * none.
+ */
+public class MontgomeryBenchmark {
+
+	public static final int[] CONST_BITS = {64, 128, 256, 512, 1024};
+	public static final int CONST_ALLOCATION_STEPS = 1_000_000;
+
+	public static void run (Benchmark benchmark) throws Exception {
+		final Random random = new Random(0);
+
+		for (int bits: CONST_BITS) {
+			final BigInteger n = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+			final BigInteger c = new BigInteger(bits - 1, random), start = new BigInteger(bits - 1, random);
+			final BigIntegerStep big = new BigIntegerStep(n, c, start);
+			final MontgomeryStep montgomery = new MontgomeryStep(n, c, start);
+
+			for (int i = 0; i < 1000; i++) {
+				big.run();
+				montgomery.run();
+			}
+
+			if (!big.q.equals(montgomery.context.fromMontgomery(montgomery.q))) {
+				throw new AssertionError(String.format("Steps disagree modulo %s", n));
+			}
+
+			System.out.println(benchmark.measure(String.format("step.biginteger.%d", bits), () -> {
+				big.run();
+				return big.q;
+			}));
+			System.out.println(benchmark.measure(String.format("step.montgomery.%d", bits), () -> {
+				montgomery.run();
+				return montgomery.q;
+			}));
+			System.out.println(String.format("%-40s %12.3f bytes/step", String.format("allocated.biginteger.%d", bits), allocatedBytesPerStep(big)));
+			System.out.println(String.format("%-40s %12.3f bytes/step", String.format("allocated.montgomery.%d", bits), allocatedBytesPerStep(montgomery)));
+		}
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread per run of step, or NaN if the JVM does not count them.
+	 */
+	static double allocatedBytesPerStep (Runnable step) {
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long thread = Thread.currentThread().getId();
+		final long before;
+
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+			return Double.NaN;
+		}
+
+		before = threads.getThreadAllocatedBytes(thread);
+
+		for (int i = 0; i < CONST_ALLOCATION_STEPS; i++) {
+			step.run();
+		}
+
+		return (threads.getThreadAllocatedBytes(thread) - before) / (double) CONST_ALLOCATION_STEPS;
+	}
+
+	private static class BigIntegerStep implements Runnable {
+
+		private final BigInteger n, c, x0;
+		private BigInteger x, q = BigInteger.ONE;
+
+		BigIntegerStep (BigInteger n, BigInteger c, BigInteger start) {
+			this.n = n;
+			this.c = c;
+			this.x0 = start;
+			this.x = start;
+		}
+
+		@Override
+		public void run () {
+			x = x.multiply(x).add(c).mod(n);
+			q = q.multiply(x0.subtract(x)).mod(n);
+		}
+
+	}
+
+	private static class MontgomeryStep implements Runnable {
+
+		private final MontgomeryContext context;
+		private final long[] c, x0, x, difference, q;
+
+		MontgomeryStep (BigInteger n, BigInteger c, BigInteger start) {
+			this.context = new MontgomeryContext(n);
+			this.c = context.toMontgomery(c);
+			this.x0 = context.toMontgomery(start);
+			this.x = context.toMontgomery(start);
+			this.difference = context.newResidue();
+			this.q = context.toMontgomery(BigInteger.ONE);
+		}
+
+		@Override
+		public void run () {
+			context.multiply(x, x, x);
+			context.add(x, c, x);
+			context.subtract(x0, x, difference);
+			context.multiply(q, difference, q);
+		}
+
+	}
+
+	public static void main (String[] args) throws Exception {
+		Benchmark.printHeader();
+		run(new Benchmark());
+	}
+
+}
@@ -0,0 +1,29 @@
+package primefactor.benchmark;
+
+import primefactor.net.message.ClientToServerMessage.FactorMessage;
+import primefactor.util.BigMath;
+
+import java.math.BigInteger;
+
+/**
+ * Measures {@link FactorMessage#partition(int)} for large numbers of slots.
+ */
+public class PartitionBenchmark {
+
+	public static final int[] CONST_SLOTS = {1_000, 10_000, 100_000};
+
+	public static void run (Benchmark benchmark) throws Exception {
+		final BigInteger n = BigInteger.TEN.pow(60).add(BigInteger.valueOf(7));
+		final FactorMessage message = new FactorMessage(n, FactorMessage.CONST_MIN_LOW_BOUND, BigMath.sqrt(n));
+
+		for (int slots: CONST_SLOTS) {
+			System.out.println(benchmark.measure(String.format("partition.%d", slots), () -> message.partition(slots)));
+		}
+	}
+
+	public static void main (String[] args) throws Exception {
+		Benchmark.printHeader();
+		run(new Benchmark());
+	}
+
+}
@@ -0,0 +1,52 @@
+package primefactor.benchmark;
+
+import primefactor.util.BigMath;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Compares {@link BigMath#sqrt(BigInteger)} with the binary search it replaced, for inputs from 64 to 4096 bits.
+ */
+public class SqrtBenchmark {
+
+	public static final int[] CONST_BITS = {64, 128, 256, 512, 1024, 2048, 4096};
+
+	/**
+	 * The former implementation of BigMath.sqrt, kept as a baseline.
+	 */
+	static BigInteger legacySqrt (BigInteger n) {
+		BigInteger a = BigInteger.ONE;
+		BigInteger b = new BigInteger(n.shiftRight(5).add(new BigInteger("8")).toString());
+		while (b.compareTo(a) >= 0) {
+			BigInteger mid = new BigInteger(a.add(b).shiftRight(1).toString());
+			if (mid.multiply(mid).compareTo(n) > 0)
+				b = mid.subtract(BigInteger.ONE);
+			else
+				a = mid.add(BigInteger.ONE);
+		}
+		return a.subtract(BigInteger.ONE);
+	}
+
+	public static void run (Benchmark benchmark) throws Exception {
+		final Random random = new Random(0);
+
+		for (int bits: CONST_BITS) {
+			final BigInteger n = new BigInteger(bits, random).setBit(bits - 1);
+
+			if (!BigMath.sqrt(n).equals(legacySqrt(n))) {
+				throw new AssertionError(String.format("sqrt implementations disagree on %s", n));
+			}
+
+			System.out.println(benchmark.measure(String.format("sqrt.legacy.%d", bits), () -> legacySqrt(n)));
+			System.out.println(benchmark.measure(String.format("sqrt.newton.%d", bits), () -> BigMath.sqrt(n)));
+			System.out.println(benchmark.measure(String.format("isPerfectSquare.%d", bits), () -> BigMath.isPerfectSquare(n)));
+		}
+	}
+
+	public static void main (String[] args) throws Exception {
+		Benchmark.printHeader();
+		run(new Benchmark());
+	}
+
+}
@@ -41,6 +41,7 @@ public abstract class BaseServer implements Closeable {
 
 	public void nextClient () throws IOException {
 		client = connection.accept();
+		client.setTcpNoDelay(true);
 		onNextClient(client);
 
 		if (logEnabled) {
@@ -55,6 +56,13 @@ public abstract class BaseServer implements Closeable {
 	 */
 	protected abstract void onNextClient (final Socket client) throws IOException;
 
+	/**
+	 * @return the port this server is listening at, which is useful when it was created with port 0.
+	 */
+	public int getPort () {
+		return connection.getLocalPort();
+	}
+
 	public Socket getClientSocket () {
 		return client;
 	}
@@ -95,10 +103,14 @@ public abstract class BaseServer implements Closeable {
 	}
 
 	protected static int parsePort (String stringPort, int defaultPort) {
+		return parseInt(stringPort, defaultPort);
+	}
+
+	protected static int parseInt (String string, int defaultValue) {
 		try {
-			return Integer.parseInt(stringPort);
+			return Integer.parseInt(string);
 		} catch (NumberFormatException e) {
-			return defaultPort;
+			return defaultValue;
 		}
 	}
 
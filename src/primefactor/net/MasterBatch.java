@@ -0,0 +1,177 @@
+package primefactor.net;
+
+import primefactor.net.message.ClientToUserMessage;
+import primefactor.net.message.UserToClientMessage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Factors a stream of numbers, one per line, over a {@link MasterSession}, keeping a fixed number of them in flight at
+ * once.<br>
+ * Results are written either in the order the numbers were read, or in the order they are answered. Lines which are
+ * not valid input are skipped, and numbers whose request failed are reported on the standard error.
+ */
+public class MasterBatch {
+
+	public static final int CONST_DEF_IN_FLIGHT = 64;
+
+	public enum Order {
+		INPUT, COMPLETION;
+
+		/**
+		 * @return the Order named name, case insensitively, or null if there is none.
+		 */
+		public static Order fromName (String name) {
+			for (Order order: values()) {
+				if (order.name().equalsIgnoreCase(name)) {
+					return order;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private final MasterSession session;
+	private final int inFlight;
+	private final Order order;
+
+	private final AtomicLong factored = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private long skipped;
+	private long elapsedNanos;
+
+	/**
+	 * @param inFlight number of numbers which can be sent and not answered yet at once, must be > 0.
+	 * @param order order results are written in.
+	 */
+	public MasterBatch (MasterSession session, int inFlight, Order order) {
+		if (inFlight <= 0) {
+			throw new IllegalArgumentException("inFlight parameter must be greater than 0");
+		}
+
+		this.session = session;
+		this.inFlight = inFlight;
+		this.order = order;
+	}
+
+	/**
+	 * Factors every number read from in, writing the results to out, and returns once all of them are written.
+	 */
+	public void run (BufferedReader in, PrintStream out) throws IOException, InterruptedException {
+		final long start = System.nanoTime();
+		final Queue<CompletableFuture<ClientToUserMessage>> pending = new ArrayDeque<>(inFlight);
+		final Queue<UserToClientMessage.FactorMessage> pendingInput = new ArrayDeque<>(inFlight);
+		final Semaphore permits = new Semaphore(inFlight);
+		UserToClientMessage.FactorMessage userInMessage;
+		String line;
+
+		while ((line = in.readLine()) != null) {
+			userInMessage = UserToClientMessage.FactorMessage.factorMessageFactory(line);
+
+			if (userInMessage == null) {
+				skipped++;
+				continue;
+			}
+
+			if (order == Order.INPUT) {
+				//Results answered out of order wait at the back of the queue, which bounds the numbers in flight
+				while (pending.size() >= inFlight) {
+					write(pendingInput.remove(), pending.remove(), out);
+				}
+
+				pending.add(session.submit(userInMessage));
+				pendingInput.add(userInMessage);
+
+				while (!pending.isEmpty() && pending.peek().isDone()) {
+					write(pendingInput.remove(), pending.remove(), out);
+				}
+			} else {
+				final UserToClientMessage.FactorMessage submitted = userInMessage;
+
+				permits.acquire();
+				session.submit(userInMessage).whenComplete((message, e) -> {
+					if (message != null) {
+						factored.incrementAndGet();
+						out.print(message);
+					} else {
+						failed(submitted, e);
+					}
+
+					permits.release();
+				});
+			}
+		}
+
+		while (!pending.isEmpty()) {
+			write(pendingInput.remove(), pending.remove(), out);
+		}
+		permits.acquire(inFlight);
+		permits.release(inFlight);
+
+		out.flush();
+		elapsedNanos = System.nanoTime() - start;
+	}
+
+	public long getFactored () {
+		return factored.get();
+	}
+
+	public long getFailed () {
+		return failed.get();
+	}
+
+	/**
+	 * @return the number of lines skipped for not being valid input.
+	 */
+	public long getSkipped () {
+		return skipped;
+	}
+
+	public long getElapsedNanos () {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the number of numbers answered per second by the last run, failed ones included.
+	 */
+	public double getThroughput () {
+		return elapsedNanos == 0 ? 0 : (getFactored() + getFailed()) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	@Override
+	public String toString () {
+		return String.format(
+				"%d numbers factored, %d failed and %d lines skipped in %d ms, %.1f numbers/s",
+				getFactored(), getFailed(), getSkipped(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getThroughput()
+		);
+	}
+
+	private void write (
+			UserToClientMessage.FactorMessage userInMessage,
+			CompletableFuture<ClientToUserMessage> result,
+			PrintStream out
+	) throws InterruptedException {
+		try {
+			out.print(result.get());
+			factored.incrementAndGet();
+		} catch (ExecutionException e) {
+			failed(userInMessage, e.getCause());
+		}
+	}
+
+	private void failed (UserToClientMessage.FactorMessage userInMessage, Throwable cause) {
+		failed.incrementAndGet();
+		System.err.format("%s: %s\n", userInMessage.getN(), cause);
+	}
+
+}
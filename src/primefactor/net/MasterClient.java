@@ -3,18 +3,29 @@ package primefactor.net;
 import primefactor.net.message.ClientToServerMessage;
 import primefactor.net.message.ClientToServerMessage.FactorMessage;
 import primefactor.net.message.ClientToUserMessage;
+import primefactor.net.message.MessageCodec;
+import primefactor.net.message.MessageStream;
 import primefactor.net.message.ServerToClientMessage;
 import primefactor.net.message.UserToClientMessage;
 import primefactor.util.BigMath;
+import primefactor.util.FactorizationCache;
+import primefactor.util.Metrics;
+import primefactor.util.ThreadPools;
 
 import java.io.*;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MasterClient class for PrimeFactorsServer.
@@ -39,16 +50,54 @@ public class MasterClient implements Closeable {
 
 	public static final int CONST_DEFAULT_AWAIT_TIME_SECONDS = 10;
 	public static final int CONST_PRIME_CERTAINTY = PrimeFactorsServer.CONST_PRIME_CERTAINTY;
+	/**
+	 * Whether to talk to PrimeFactorsServers with the binary protocol of {@link MessageCodec} rather than with Java
+	 * serialization.
+	 */
+	public static final boolean CONST_BINARY_PROTOCOL = true;
+	/**
+	 * Number of chunks each worker server's share of [2, sqrt(n)] is cut into by {@link RangeScheduler}.
+	 */
+	public static final int CONST_CHUNKS_PER_WORKER = 16;
+	/**
+	 * Default number of worker servers each request is distributed over: the default size of a fleet, as asking for
+	 * more endpoints than the fleet has servers hands out some of them twice, which only adds connections.
+	 */
+	public static final int CONST_DEF_WORKERS = MasterServer.CONST_DEF_FLEET_SIZE;
+
+	public static final String CONST_OPT_CACHE_SIZE = "--cache-size=";
+	public static final String CONST_OPT_CACHE_TTL = "--cache-ttl=";
+	public static final String CONST_OPT_CACHE_FILE = "--cache-file=";
+	public static final String CONST_OPT_SESSION = "--session";
+	public static final String CONST_OPT_BATCH = "--batch";
+	public static final String CONST_OPT_IN_FLIGHT = "--in-flight=";
+	public static final String CONST_OPT_ORDER = "--order=";
+	public static final String CONST_OPT_METRICS = "--metrics";
+	public static final String CONST_OPT_WORKERS = "--workers=";
+
+	/**
+	 * Round trip time of asking the MasterServer for worker endpoints.
+	 */
+	private static final Metrics.Histogram spawnNanos = Metrics.histogram("client.spawn.nanos");
+
+	/**
+	 * Source of the ids of the FactorMessages sent, which requests are cancelled by.
+	 */
+	static final AtomicLong nextRequestId = new AtomicLong();
 
 	private Socket connection;
 
 	private Scanner userIn;
 	private PrintStream userOut;
 
+	private FactorizationCache cache;
+	private int workers = CONST_DEF_WORKERS;
+
 	public MasterClient (final String address) throws IOException {
 		final String[] splitAddress = address.split(CONST_ADDRESS_SEP);
 
 		connection = new Socket(splitAddress[0], Integer.valueOf(splitAddress[1]));
+		connection.setTcpNoDelay(true);
 		userIn = new Scanner(System.in);
 		userOut = System.out;
 	}
@@ -63,6 +112,25 @@ public class MasterClient implements Closeable {
 		return (ServerToClientMessage.SpawnMessage) new ObjectInputStream(connection.getInputStream()).readObject();
 	}
 
+	/**
+	 * Has the MasterServer spawn servers worker servers.
+	 * @return the endpoints of the worker servers, in the order they were sent.
+	 */
+	List<ServerToClientMessage.SpawnMessage> spawn (int servers) throws IOException, ClassNotFoundException {
+		final List<ServerToClientMessage.SpawnMessage> result = new ArrayList<>(servers);
+		final long start = System.nanoTime();
+
+		writeSpawnMessage(new ClientToServerMessage.SpawnMessage(servers));
+
+		for (int server = 0; server < servers; server++) {
+			result.add(readSpawnMessage());
+		}
+
+		spawnNanos.recordSince(start);
+
+		return result;
+	}
+
 	boolean writeUserFactoringResult (ClientToUserMessage message) {
 		return writeUser(message.toString());
 	}
@@ -81,6 +149,33 @@ public class MasterClient implements Closeable {
 		return userOut.checkError();
 	}
 
+	/**
+	 * @param cache cache factor() looks n up in before distributing its factoring, and stores the complete
+	 *              factorizations it computes into, or null for none.
+	 */
+	public void setCache (FactorizationCache cache) {
+		this.cache = cache;
+	}
+
+	public FactorizationCache getCache () {
+		return cache;
+	}
+
+	/**
+	 * @param workers number of worker servers factor() spreads the factoring of each n over, must be > 0.
+	 */
+	public void setWorkers (int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException(String.format("Parameter workers has value %d, which is not > 0", workers));
+		}
+
+		this.workers = workers;
+	}
+
+	public int getWorkers () {
+		return workers;
+	}
+
 	@Override
 	public void close () throws IOException {
 		connection.close();
@@ -97,107 +192,680 @@ public class MasterClient implements Closeable {
 	 * See the file multithreading_extension contained within the documentation/ folder, at point #1 of the
 	 * "bugs" section for more informations, or read the problem assignment right under "Problem 5: Integrating ...".
 	 * </p>
-	 * @param message message containing the prime factors found from the parallel servers, that is those below or
-	 *                equal to sqrt(N).
-	 * @return the correctly computed message containing all the prime factors of the given BigInteger N.
+	 * @param message message the prime factors of N are to be added to.
+	 * @param tracker tracker holding the prime factors found from the parallel servers, that is those below or equal
+	 *                to sqrt(N), along with the cofactor of N they leave.
 	 * @return the message containing the complete list of factors of N.
 	 */
-	private ClientToUserMessage computeFinalMessage (ClientToUserMessage message) {
-		BigInteger n = message.getN();
+	static ClientToUserMessage computeFinalMessage (ClientToUserMessage message, CofactorTracker tracker) {
+		final BigInteger cofactor = tracker.getCofactor();
 
-		for (BigInteger factor: message.getFactors()) {
-			n = n.divide(factor);
-		}
+		message.addFactors(tracker.getFactors());
 
-		if (n.isProbablePrime(CONST_PRIME_CERTAINTY) && n.compareTo(BigInteger.ONE) == 1) {
-			message.addFactor(n);
+		//Once the tracker is complete, the cofactor is known to be 1 or prime: there is no need to check it again
+		if (cofactor.compareTo(BigInteger.ONE) == 1 &&
+				(tracker.isComplete() || cofactor.isProbablePrime(CONST_PRIME_CERTAINTY))) {
+			message.addFactor(cofactor);
 		}
 
 		return message;
 	}
 
 	/**
-	 * @param args String array containing Program arguments.  Each String indicates a
-	 *             PrimeFactorsServer location in the form "host:port"
-	 *             If no program arguments are inputted, this Client will terminate.
+	 * Has the MasterServer this client is connected to spawn the worker servers needed, distributes the factoring of
+	 * n across them and collects their results.<br>
+	 * The remaining cofactor of n is updated as prime factors arrive: as soon as it is 1 or prime, n is fully factored
+	 * and the worker servers are told to stop.
+	 * If a cache was set, n is looked up in it first and the servers are only resorted to on a miss.
+	 * @param userInMessage message holding the number to factor and the algorithm to factor it with.
+	 * @return the message containing the complete list of factors of n.
 	 */
-	public static void main (String[] args) throws Exception {
-		MasterClient client;
+	public ClientToUserMessage factor (UserToClientMessage.FactorMessage userInMessage) throws Exception {
+		final List<BigInteger> cached;
+		final ClientToUserMessage result;
+
+		if (cache == null) {
+			return distribute(userInMessage);
+		}
+
+		cached = cache.get(userInMessage.getN());
 
-		FactorMessage serverOutMessage;
-		List<FactorMessage> factoringPartitions;
-		ClientToServerMessage.SpawnMessage serverOutSpawnMessage;
+		if (cached != null) {
+			return new ClientToUserMessage(userInMessage.getN(), cached.toArray(new BigInteger[0]));
+		}
+
+		result = distribute(userInMessage);
+
+		//A factorization Pollard's rho gave up on is not complete, and must not be served again
+		if (BigMath.multiply(result.getFactors()).equals(userInMessage.getN())) {
+			cache.put(userInMessage.getN(), result.getFactors());
+		}
+
+		return result;
+	}
+
+	private ClientToUserMessage distribute (UserToClientMessage.FactorMessage userInMessage) throws Exception {
+		final FactorMessage serverOutMessage;
+		final RangeScheduler scheduler;
+		final CofactorTracker tracker;
+		final Iterator<ServerToClientMessage.SpawnMessage> endpoints;
 		ServerToClientMessage.SpawnMessage serverInSpawnMessage;
 
-		ClientToUserMessage userOutMessage;
-		UserToClientMessage.FactorMessage userInMessage;
+		final ClientToUserMessage userOutMessage;
 
-		Future<PrimeFactorsClient.Result>[] workerClientsResults;
-		ThreadPoolExecutor threadPool;
+		final List<PrimeFactorsClient> workerClients = new LinkedList<>();
+		final CompletionService<PrimeFactorsClient.Result> workerClientsResults;
+		final int workers;
 
-		if (args.length > 0) {
-			do {
-				client = new MasterClient(args[0]);
-
-				client.writeUser(CONST_USER_INPUT);
-				userInMessage = UserToClientMessage.FactorMessage.factorMessageFactory(client.readUserRaw());
-
-				if (userInMessage != null) {
-					serverOutMessage = new FactorMessage(
-							userInMessage.getN(),
-							FactorMessage.CONST_MIN_LOW_BOUND,
-							BigMath.sqrt(userInMessage.getN())
-					);
-					factoringPartitions = serverOutMessage.partition();
-					serverOutSpawnMessage = new ClientToServerMessage.SpawnMessage(factoringPartitions.size());
-					userOutMessage = new ClientToUserMessage(userInMessage.getN());
-
-					threadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(factoringPartitions.size());
-					workerClientsResults = new Future[factoringPartitions.size()];
-
-					client.writeSpawnMessage(serverOutSpawnMessage);
-
-					for (int server = 0; server < serverOutSpawnMessage.getServersNumber(); server++) {
-						serverInSpawnMessage = client.readSpawnMessage();
-
-						workerClientsResults[server] = threadPool.submit(
-								new PrimeFactorsClient(
-										serverInSpawnMessage.getAddress(),
-										serverInSpawnMessage.getPort(),
-										factoringPartitions.get(server)
-								)
-						);
-					}
+		userOutMessage = new ClientToUserMessage(userInMessage.getN());
+		tracker = new CofactorTracker(userInMessage.getN(), CONST_PRIME_CERTAINTY);
 
-					threadPool.shutdown();
+		if (tracker.isComplete()) {
+			return computeFinalMessage(userOutMessage, tracker); //n is prime, there is nothing to distribute
+		}
 
-					for (int result = 0; result < workerClientsResults.length; result++) {
-						userOutMessage.addFactors(workerClientsResults[result].get().getFactors());
+		serverOutMessage = newServerMessage(userInMessage);
+		workers = workersFor(serverOutMessage, this.workers);
+
+		if (userInMessage.getAlgorithm().isRangeBased()) {
+			scheduler = new RangeScheduler(serverOutMessage, workers, CONST_CHUNKS_PER_WORKER);
+		} else {
+			scheduler = null;
+		}
+
+		endpoints = spawn(workers).iterator();
+
+		if (scheduler != null) {
+			for (int server = 0; server < workers; server++) {
+				serverInSpawnMessage = endpoints.next();
+				workerClients.add(
+						new PrimeFactorsClient(
+								serverInSpawnMessage.getAddress(),
+								serverInSpawnMessage.getPort(),
+								scheduler,
+								server,
+								tracker
+						)
+				);
+			}
+		} else {
+			for (FactorMessage replica: serverOutMessage.replicate(workers)) {
+				serverInSpawnMessage = endpoints.next();
+				workerClients.add(
+						new PrimeFactorsClient(
+								serverInSpawnMessage.getAddress(),
+								serverInSpawnMessage.getPort(),
+								replica,
+								tracker
+						)
+				);
+			}
+		}
+
+		//Once n is fully factored, stop handing out chunks and have the servers drop the requests in progress
+		tracker.getCompletion().thenRun(() -> {
+			if (scheduler != null) {
+				scheduler.cancel();
+			}
+
+			for (PrimeFactorsClient client: workerClients) {
+				client.cancel();
+			}
+		});
+
+		//The clients mostly wait for their server: they share threads with those of every other request
+		workerClientsResults = new ExecutorCompletionService<>(ThreadPools.io());
+
+		for (PrimeFactorsClient client: workerClients) {
+			workerClientsResults.submit(client);
+		}
+
+		if (scheduler != null) {
+			for (int result = 0; result < workers; result++) {
+				workerClientsResults.take().get();
+			}
+		} else {
+			awaitFirstComplete(workerClients, workerClientsResults, tracker);
+		}
+
+		return computeFinalMessage(userOutMessage, tracker);
+	}
+
+	/**
+	 * Waits for the replicas of workerClients, each factoring n as a whole, until one of them fully factored n, then
+	 * cancels the others. A replica which failed, or answered with an incomplete factorization as Pollard's rho may,
+	 * does not end the wait: the others are still given their chance.
+	 * @throws ExecutionException the failure of the last replica, if all of them failed.
+	 */
+	private static void awaitFirstComplete (List<PrimeFactorsClient> workerClients,
+			CompletionService<PrimeFactorsClient.Result> workerClientsResults, CofactorTracker tracker)
+			throws InterruptedException, ExecutionException {
+		ExecutionException failure = null;
+		int failed = 0;
+
+		for (int result = 0; result < workerClients.size() && !tracker.isComplete(); result++) {
+			try {
+				workerClientsResults.take().get();
+			} catch (ExecutionException e) {
+				failure = e;
+				failed++;
+			}
+		}
+
+		for (PrimeFactorsClient client: workerClients) {
+			client.cancel();
+		}
+
+		if (failed == workerClients.size()) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * @return the request of factoring n, for the worker servers to share, with a new id.
+	 */
+	static FactorMessage newServerMessage (UserToClientMessage.FactorMessage userInMessage) {
+		return new FactorMessage(
+				userInMessage.getN(),
+				FactorMessage.CONST_MIN_LOW_BOUND,
+				BigMath.sqrt(userInMessage.getN()),
+				userInMessage.getAlgorithm(),
+				System.nanoTime(),
+				nextRequestId.incrementAndGet()
+		);
+	}
+
+	/**
+	 * @param available number of worker servers which can be used.
+	 * @return the number of worker servers to have answer serverOutMessage: a single one for ranges too narrow to be
+	 * worth sharing, all of them otherwise.
+	 */
+	static int workersFor (FactorMessage serverOutMessage, int available) {
+		if (serverOutMessage.getAlgorithm().isRangeBased() &&
+				serverOutMessage.getHighBound().subtract(serverOutMessage.getLowBound())
+						.compareTo(BigInteger.valueOf(available)) <= 0) {
+			return 1;
+		}
+
+		return available;
+	}
+
+	/**
+	 * @param args String array containing Program arguments.  The first String indicates the
+	 *             MasterServer location in the form "host:port", and can be followed by the options
+	 *             "--cache-size=N" (0 disables caching), "--cache-ttl=SECONDS" and "--cache-file=PATH",
+	 *             the file factorizations are loaded from at startup and saved to at exit.
+	 *             "--workers=N" sets the number of worker servers each number is factored over, by default
+	 *             the default size of a fleet, the number of cores.
+	 *             With "--session[=CONNECTIONS]", the numbers input are factored over a single
+	 *             {@link MasterSession}, without waiting for the previous ones to be answered.
+	 *             With "--batch[=PATH]", the numbers read from the file at PATH, or from the standard input,
+	 *             are factored by a {@link MasterBatch} over a session, "--in-flight=N" of them at once,
+	 *             writing the results in "--order=input" (the default) or "--order=completion".
+	 *             With "--metrics", the metrics collected are written to the standard error at exit.
+	 *             If no program arguments are inputted, this Client will terminate.
+	 */
+	public static void main (String[] args) throws Exception {
+		MasterClient client;
+		UserToClientMessage.FactorMessage userInMessage;
+		final FactorizationCache cache;
+		final String cacheFile, session, batch;
+		final int cacheSize, connections;
+		final MasterBatch.Order order;
+
+		if (args.length > 0) {
+			Metrics.registerMBean();
+
+			cacheSize = BaseServer.parseInt(option(args, CONST_OPT_CACHE_SIZE), FactorizationCache.CONST_DEF_CAPACITY);
+			cacheFile = option(args, CONST_OPT_CACHE_FILE);
+
+			if (cacheSize > 0) {
+				cache = new FactorizationCache(
+						cacheSize,
+						Math.max(1, BaseServer.parseInt(
+								option(args, CONST_OPT_CACHE_TTL),
+								(int) TimeUnit.MILLISECONDS.toSeconds(FactorizationCache.CONST_DEF_TTL_MILLIS)
+						)) * 1000L
+				);
+
+				if (cacheFile != null && new File(cacheFile).isFile()) {
+					cache.load(new File(cacheFile));
+				}
+			} else {
+				cache = null;
+			}
+
+			session = option(args, CONST_OPT_SESSION);
+			batch = option(args, CONST_OPT_BATCH);
+			connections = Math.max(1, BaseServer.parseInt(
+					session == null ? null : session.replaceFirst("^=", ""), MasterSession.CONST_DEF_CONNECTIONS
+			));
+
+			if (batch != null) {
+				order = MasterBatch.Order.fromName(option(args, CONST_OPT_ORDER));
+				runBatch(
+						args[0],
+						connections,
+						cache,
+						batch.isEmpty() ? null : batch.replaceFirst("^=", ""),
+						Math.max(1, BaseServer.parseInt(option(args, CONST_OPT_IN_FLIGHT), MasterBatch.CONST_DEF_IN_FLIGHT)),
+						order == null ? MasterBatch.Order.INPUT : order
+				);
+			} else if (session != null) {
+				runSession(args[0], connections, cache);
+			} else {
+				do {
+					client = new MasterClient(args[0]);
+					client.setCache(cache);
+					client.setWorkers(Math.max(1, BaseServer.parseInt(option(args, CONST_OPT_WORKERS), CONST_DEF_WORKERS)));
+
+					client.writeUser(CONST_USER_INPUT);
+					userInMessage = UserToClientMessage.FactorMessage.factorMessageFactory(client.readUserRaw());
+
+					if (userInMessage != null) {
+						client.writeUserFactoringResult(client.factor(userInMessage));
 					}
 
-					userOutMessage = client.computeFinalMessage(userOutMessage);
+					client.close();
+				} while (userInMessage != null); //Until the user input is valid
+			}
 
-					client.writeUserFactoringResult(userOutMessage);
+			if (cache != null) {
+				if (cacheFile != null) {
+					cache.save(new File(cacheFile));
 				}
 
-				client.close();
-			} while (userInMessage != null); //Until the user input is valid
+				System.err.println(cache);
+			}
+
+			if (option(args, CONST_OPT_METRICS) != null) {
+				System.err.print(Metrics.getInstance().getText());
+			}
 		} else {
-			System.err.format("%s: <server:port>\n", MasterClient.class.getSimpleName());
+			System.err.format(
+					"%s: <server:port> [%sN] [%sSECONDS] [%sPATH] [%sN] [%s[=CONNECTIONS]] [%s[=PATH] [%sN] [%sinput|completion]] [%s]\n",
+					MasterClient.class.getSimpleName(),
+					CONST_OPT_CACHE_SIZE, CONST_OPT_CACHE_TTL, CONST_OPT_CACHE_FILE, CONST_OPT_WORKERS, CONST_OPT_SESSION,
+					CONST_OPT_BATCH, CONST_OPT_IN_FLIGHT, CONST_OPT_ORDER, CONST_OPT_METRICS
+			);
 			System.exit(1);
 		}
 	}
 
+	/**
+	 * Factors the numbers input over a MasterSession, writing each result as soon as it is known, until the user
+	 * input is not valid. Returns once all the numbers input are answered.
+	 */
+	private static void runSession (String address, int connections, FactorizationCache cache) throws Exception {
+		final Scanner userIn = new Scanner(System.in);
+		final List<CompletableFuture<Void>> pending = new LinkedList<>();
+		UserToClientMessage.FactorMessage userInMessage;
+
+		try (MasterSession session = new MasterSession(address, connections)) {
+			session.setCache(cache);
+
+			while (true) {
+				System.out.println(CONST_USER_INPUT);
+				userInMessage = UserToClientMessage.FactorMessage.factorMessageFactory(
+						userIn.hasNextLine() ? userIn.nextLine() : null
+				);
+
+				if (userInMessage == null) {
+					break; //Until the user input is valid
+				}
+
+				pending.removeIf(CompletableFuture::isDone);
+				pending.add(session.submit(userInMessage).thenAccept(System.out::println));
+			}
+
+			CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get();
+		}
+	}
+
+	/**
+	 * Factors the numbers read from the file at path, or from the standard input if path is null, with a MasterBatch,
+	 * then reports its throughput on the standard error.
+	 */
+	private static void runBatch (
+			String address, int connections, FactorizationCache cache, String path, int inFlight, MasterBatch.Order order
+	) throws Exception {
+		final MasterBatch batch;
+
+		try (
+				MasterSession session = new MasterSession(address, connections);
+				BufferedReader in = new BufferedReader(
+						path == null ? new InputStreamReader(System.in) : new FileReader(path)
+				)
+		) {
+			session.setCache(cache);
+			batch = new MasterBatch(session, inFlight, order);
+			batch.run(in, System.out);
+		}
+
+		System.err.println(batch);
+	}
+
+	/**
+	 * @return the value of the first argument starting with prefix, without the prefix, or null if there is none.
+	 */
+	static String option (String[] args, String prefix) {
+		for (String arg: args) {
+			if (arg.startsWith(prefix)) {
+				return arg.substring(prefix.length());
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Hands out the range of a FactorMessage to a fixed number of workers in small chunks, on demand.<br>
+	 * Each worker owns a contiguous slice of the range and takes chunks from its front; a worker whose slice is
+	 * exhausted steals the back half of the largest slice left, so that all of them stay busy until the whole range has
+	 * been handed out, however unevenly the cost of factoring is spread across it.<br>
+	 * Slices are owned in the order workers first ask for a chunk: the range is thus scanned from its lower end first,
+	 * where the prime factors of n most likely are, even when some workers wait for their server to be free.
+	 */
+	public static class RangeScheduler {
+
+		/**
+		 * Narrowest chunk handed out, so that factoring a chunk does not take less than a round trip to the server.
+		 */
+		public static final int CONST_MIN_CHUNK_WIDTH = 1 << 16;
+		/**
+		 * Widest chunk handed out, so that the prime factors found reach the client, and cancellations the server, at
+		 * least every few hundred milliseconds.
+		 */
+		public static final int CONST_MAX_CHUNK_WIDTH = 1 << 24;
+
+		private final FactorMessage message;
+		/**
+		 * Lower and upper bounds of the part of each slice not handed out yet. A slice is empty when its lower bound
+		 * exceeds its upper one.
+		 */
+		private final BigInteger[] lows, highs;
+		private final BigInteger chunkWidth;
+		/**
+		 * Index of the slice owned by each worker, -1 for the workers which have not asked for a chunk yet.
+		 */
+		private final int[] slices;
+
+		private int nextSlice;
+
+		private long steals;
+		private boolean cancelled;
+
+		/**
+		 * @param message FactorMessage whose range is to be scheduled.
+		 * @param workers number of workers the range is to be shared between.
+		 * @param chunksPerWorker number of chunks each worker's initial slice is cut into.
+		 */
+		public RangeScheduler (FactorMessage message, int workers, int chunksPerWorker) {
+			final BigInteger width, workersNumber;
+			BigInteger low;
+
+			if (workers <= 0 || chunksPerWorker <= 0) {
+				throw new IllegalArgumentException("workers and chunksPerWorker parameters must be greater than 0");
+			}
+
+			this.message = message;
+			this.lows = new BigInteger[workers];
+			this.highs = new BigInteger[workers];
+			this.slices = new int[workers];
+
+			Arrays.fill(slices, -1);
+
+			width = message.getHighBound().subtract(message.getLowBound()).add(BigInteger.ONE);
+			workersNumber = BigInteger.valueOf(workers);
+			chunkWidth = width.divide(workersNumber.multiply(BigInteger.valueOf(chunksPerWorker)))
+					.max(BigInteger.valueOf(CONST_MIN_CHUNK_WIDTH))
+					.min(BigInteger.valueOf(CONST_MAX_CHUNK_WIDTH));
+
+			low = message.getLowBound();
+			for (int slice = 0; slice < workers; slice++) {
+				//The first width % workers slices are one number wider than the others
+				lows[slice] = low;
+				low = low.add(width.divide(workersNumber));
+				if (BigInteger.valueOf(slice).compareTo(width.mod(workersNumber)) < 0) {
+					low = low.add(BigInteger.ONE);
+				}
+				highs[slice] = low.subtract(BigInteger.ONE);
+			}
+		}
+
+		/**
+		 * @param worker index of the worker asking, between 0 and the number of workers excluded.
+		 * @return the next chunk worker is to factor n over, or null if the whole range has been handed out.
+		 */
+		public synchronized FactorMessage next (int worker) {
+			final BigInteger low, high;
+			final int slice;
+
+			if (slices[worker] < 0) {
+				slices[worker] = nextSlice++;
+			}
+			slice = slices[worker];
+
+			if (cancelled || (isEmpty(slice) && !steal(slice))) {
+				return null;
+			}
+
+			low = lows[slice];
+			high = low.add(chunkWidth).subtract(BigInteger.ONE).min(highs[slice]);
+			lows[slice] = high.add(BigInteger.ONE);
+
+			return new FactorMessage(message.getN(), low, high, message.getAlgorithm(), message.getSeed(), message.getId());
+		}
+
+		/**
+		 * Stops handing out chunks: {@link RangeScheduler#next(int)} returns null from now on.
+		 */
+		public synchronized void cancel () {
+			cancelled = true;
+		}
+
+		/**
+		 * @return number of times a worker took over part of the slice of another one.
+		 */
+		public synchronized long getSteals () {
+			return steals;
+		}
+
+		/**
+		 * Moves the back half of the largest slice left into the empty slice thief.
+		 * @return false if no slice has anything left.
+		 */
+		private boolean steal (int thief) {
+			BigInteger remaining, largest = BigInteger.ZERO;
+			int victim = -1;
+
+			for (int slice = 0; slice < lows.length; slice++) {
+				remaining = highs[slice].subtract(lows[slice]).add(BigInteger.ONE);
+
+				if (remaining.compareTo(largest) > 0) {
+					largest = remaining;
+					victim = slice;
+				}
+			}
+
+			if (victim < 0) {
+				return false;
+			}
+
+			//A slice narrower than two chunks is not worth splitting: its next chunk is taken as a whole
+			if (largest.compareTo(chunkWidth.shiftLeft(1)) < 0) {
+				lows[thief] = lows[victim];
+				highs[thief] = lows[victim].add(chunkWidth).subtract(BigInteger.ONE).min(highs[victim]);
+				lows[victim] = highs[thief].add(BigInteger.ONE);
+			} else {
+				highs[thief] = highs[victim];
+				highs[victim] = lows[victim].add(largest.shiftRight(1)).subtract(BigInteger.ONE);
+				lows[thief] = highs[victim].add(BigInteger.ONE);
+			}
+
+			steals++;
+
+			return true;
+		}
+
+		private boolean isEmpty (int slice) {
+			return lows[slice].compareTo(highs[slice]) > 0;
+		}
+
+	}
+
+	/**
+	 * Keeps track of the part of n whose factorization is still unknown, as prime factors of n are found in any
+	 * order, possibly more than once.
+	 */
+	public static class CofactorTracker {
+
+		private final int primeCertainty;
+		private final List<BigInteger> factors = new LinkedList<>();
+		private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+		private BigInteger cofactor;
+
+		/**
+		 * @param primeCertainty parameter to pass to {@link BigInteger#isProbablePrime(int)}.
+		 */
+		public CofactorTracker (BigInteger n, int primeCertainty) {
+			this.primeCertainty = primeCertainty;
+			this.cofactor = n;
+
+			if (isFactored()) {
+				completion.complete(null);
+			}
+		}
+
+		/**
+		 * Divides the cofactor by each of primes which still divides it. Primes which do not, because they were
+		 * already added as many times as they divide n, are ignored.
+		 * @param primes prime factors of n.
+		 * @return true if n is fully factored.
+		 */
+		public boolean addFactors (Collection<BigInteger> primes) {
+			boolean divided = false;
+
+			synchronized (this) {
+				if (completion.isDone()) {
+					return true;
+				}
+
+				for (BigInteger prime: primes) {
+					if (cofactor.remainder(prime).signum() == 0) {
+						cofactor = cofactor.divide(prime);
+						factors.add(prime);
+						divided = true;
+					}
+				}
+
+				if (!divided || !isFactored()) {
+					return false;
+				}
+			}
+
+			//Outside of the lock, as completion runs the actions depending on it
+			completion.complete(null);
+
+			return true;
+		}
+
+		/**
+		 * @return true if the factors added so far and the cofactor, when greater than 1, are all the prime factors
+		 * of n.
+		 */
+		public boolean isComplete () {
+			return completion.isDone();
+		}
+
+		/**
+		 * @return a future completed as soon as n is fully factored.
+		 */
+		public CompletableFuture<Void> getCompletion () {
+			return completion;
+		}
+
+		public synchronized BigInteger getCofactor () {
+			return cofactor;
+		}
+
+		/**
+		 * @return the prime factors added so far which divide n, in increasing order.
+		 */
+		public synchronized List<BigInteger> getFactors () {
+			final List<BigInteger> result = new ArrayList<>(factors);
+
+			Collections.sort(result);
+
+			return result;
+		}
+
+		/**
+		 * Completes the factorization without checking the cofactor any further, as a server proved it to be 1 or
+		 * prime, see {@link ServerToClientMessage.DoneMessage#isFactored()}.
+		 */
+		public void markFactored () {
+			completion.complete(null);
+		}
+
+		private boolean isFactored () {
+			return cofactor.equals(BigInteger.ONE) || cofactor.isProbablePrime(primeCertainty);
+		}
+
+	}
+
 	static class PrimeFactorsClient implements Callable<PrimeFactorsClient.Result> {
 
 		private InetAddress address;
 		private int port;
 		private ClientToServerMessage.FactorMessage factorMessage;
-
-		public PrimeFactorsClient (InetAddress address, int port, FactorMessage factorMessage) {
+		private RangeScheduler scheduler;
+		private int worker;
+		private CofactorTracker tracker;
+
+		private volatile MessageStream stream;
+		private volatile FactorMessage inFlight;
+
+		/**
+		 * Builds a client having the server at address:port answer factorMessage alone.
+		 * @param tracker tracker the prime factors found are added to as they arrive.
+		 */
+		public PrimeFactorsClient (InetAddress address, int port, FactorMessage factorMessage, CofactorTracker tracker) {
 			this.address = address;
 			this.port = port;
 			this.factorMessage = factorMessage;
+			this.tracker = tracker;
+		}
+
+		/**
+		 * Builds a client having the server at address:port answer the chunks scheduler hands out to worker, one after
+		 * the other over the same connection, until none is left.
+		 * @param tracker tracker the prime factors found are added to as they arrive.
+		 */
+		public PrimeFactorsClient (InetAddress address, int port, RangeScheduler scheduler, int worker, CofactorTracker tracker) {
+			this.address = address;
+			this.port = port;
+			this.factorMessage = scheduler.message;
+			this.scheduler = scheduler;
+			this.worker = worker;
+			this.tracker = tracker;
+		}
+
+		/**
+		 * Asks the server to stop working on the request in progress, if any. Can be called from any thread.
+		 */
+		public void cancel () {
+			final MessageStream stream = this.stream;
+			final FactorMessage inFlight = this.inFlight;
+
+			if (stream != null && inFlight != null) {
+				try {
+					stream.writeMessage(new ClientToServerMessage.CancelMessage(inFlight.getId()));
+				} catch (IOException e) {
+					//The connection is already closed, so is the request
+				}
+			}
 		}
 
 		@Override
@@ -206,23 +874,47 @@ public class MasterClient implements Closeable {
 			ServerToClientMessage serverInMessage;
 
 			final Socket connection = new Socket(address, port);
-			ObjectOutputStream out = new ObjectOutputStream(connection.getOutputStream());
-			ObjectInputStream in = new ObjectInputStream(connection.getInputStream());
+			connection.setTcpNoDelay(true);
+			final MessageStream stream = MessageStream.connect(connection, CONST_BINARY_PROTOCOL);
 
-			out.writeObject(factorMessage);
+			this.stream = stream;
 
-			do {
-				serverInMessage = (ServerToClientMessage) in.readObject();
+			FactorMessage chunk = scheduler == null ? factorMessage : scheduler.next(worker);
 
-				if (serverInMessage instanceof ServerToClientMessage.FoundMessage) {
-					result.addFactor(((ServerToClientMessage.FoundMessage) serverInMessage).getFactor());
-				} else if (serverInMessage instanceof ServerToClientMessage.InvalidMessage) {
-					//TO-DO What should one do here when receiving an InvalidMessage?
+			while (chunk != null && !tracker.isComplete()) {
+				inFlight = chunk;
+				stream.writeMessage(chunk);
+
+				if (tracker.isComplete()) {
+					cancel(); //n was factored while chunk was being sent, after cancellations were broadcast
 				}
-			} while (serverInMessage instanceof ServerToClientMessage.FoundMessage);
 
-			out.close();
-			in.close();
+				do {
+					serverInMessage = (ServerToClientMessage) stream.readMessage();
+
+					if (serverInMessage instanceof ServerToClientMessage.FoundMessage) {
+						result.addFactor(((ServerToClientMessage.FoundMessage) serverInMessage).getFactor());
+						tracker.addFactors(Collections.singletonList(((ServerToClientMessage.FoundMessage) serverInMessage).getFactor()));
+					} else if (serverInMessage instanceof ServerToClientMessage.BatchMessage) {
+						final List<BigInteger> factors = ((ServerToClientMessage.BatchMessage) serverInMessage).getFactors();
+
+						result.getFactors().addAll(factors);
+						tracker.addFactors(factors);
+					} else if (serverInMessage instanceof ServerToClientMessage.DoneMessage &&
+							((ServerToClientMessage.DoneMessage) serverInMessage).isFactored()) {
+						//The prime factors of this chunk, all added already, leave a cofactor which is 1 or prime
+						tracker.markFactored();
+					} else if (serverInMessage instanceof ServerToClientMessage.InvalidMessage) {
+						//TO-DO What should one do here when receiving an InvalidMessage?
+					}
+				} while (serverInMessage instanceof ServerToClientMessage.FoundMessage ||
+						serverInMessage instanceof ServerToClientMessage.BatchMessage);
+
+				inFlight = null;
+				chunk = scheduler == null ? null : scheduler.next(worker);
+			}
+
+			stream.close();
 			connection.close();
 
 			return result;
@@ -3,17 +3,15 @@ package primefactor.net;
 import primefactor.net.message.ClientToServerMessage;
 import primefactor.net.message.ServerToClientMessage;
 import primefactor.net.message.ServerToClientMessage.SpawnMessage;
+import primefactor.util.BigMath;
+import primefactor.util.Metrics;
+import primefactor.util.PrimeSource;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by n0ne on 23/03/17.
@@ -22,9 +20,33 @@ public final class MasterServer extends BaseServer {
 
 	public static final int CONST_DEF_PORT = PrimeFactorsServer.CONST_DEF_PORT - 1;
 	public static final int CONST_MAX_PORT_TRIES = 100;
-
+	public static final int CONST_DEF_FLEET_SIZE = Runtime.getRuntime().availableProcessors();
+	/**
+	 * Number of requests the worker fleet factors at the same time.
+	 */
+	public static final int CONST_DEF_FLEET_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Time taken to hand out the endpoints a client asked for, workers respawned meanwhile included.
+	 */
+	private static final Metrics.Histogram spawnNanos = Metrics.histogram("master.spawn.nanos");
+
+	private final WorkerFleet fleet;
+
+	/**
+	 * Creates a MasterServer with a fleet of CONST_DEF_FLEET_SIZE worker servers.
+	 */
 	public MasterServer (int port, boolean logEnabled) throws IOException {
+		this(port, CONST_DEF_FLEET_SIZE, logEnabled);
+	}
+
+	/**
+	 * @param fleetSize number of worker servers kept listening for the clients of this server.
+	 */
+	public MasterServer (int port, int fleetSize, boolean logEnabled) throws IOException {
 		super(port, logEnabled);
+
+		fleet = new WorkerFleet(fleetSize, PrimeFactorsServer.CONST_DEF_PORT, CONST_DEF_FLEET_THREADS, logEnabled);
 	}
 
 	public ClientToServerMessage.SpawnMessage readSpawnMessage () throws IOException {
@@ -88,48 +110,57 @@ public final class MasterServer extends BaseServer {
 
 	}
 
+	/**
+	 * Accepts the next client and replies to its SpawnMessage with the endpoints of as many worker servers as it
+	 * requested. The workers are already listening, and keep doing so after the client is gone.
+	 */
+	public void serveNextClient () throws IOException {
+		final ClientToServerMessage.SpawnMessage inMessage;
+		final long start;
+
+		nextClient();
+
+		try {
+			inMessage = readSpawnMessage();
+			start = System.nanoTime();
+
+			for (int i = 0; i < inMessage.getServersNumber(); i++) {
+				writeMessage(fleet.nextEndpoint());
+			}
+
+			spawnNanos.recordSince(start);
+		} catch (EOFException e) {
+		} finally {
+			closeClient();
+		}
+	}
+
+	@Override
+	public void close () throws IOException {
+		super.close();
+		fleet.close();
+	}
+
 	public static void main (String[] args) throws Exception {
 		final MasterServer server;
-		List<PrimeFactorsServer> workerServers = new LinkedList<>();
-		ThreadPoolExecutor threadPool;
-		ClientToServerMessage.SpawnMessage inMessage;
-		ServerToClientMessage.SpawnMessage outMessage;
 
-		if (args.length > 0) {
+		if (args.length > 1) {
+			server = new MasterServer(
+					BaseServer.parsePort(args[0], CONST_DEF_PORT),
+					Math.max(1, BaseServer.parseInt(args[1], CONST_DEF_FLEET_SIZE)),
+					true
+			);
+		} else if (args.length > 0) {
 			server = new MasterServer(BaseServer.parsePort(args[0], CONST_DEF_PORT), true);
 		} else {
 			server = new MasterServer(CONST_DEF_PORT, true);
 		}
 
-		while (true) {
-			server.nextClient();
+		Metrics.registerMBean();
+		BigMath.setPrimeSource(PrimeSource.fromSystemProperties());
 
-			try {
-				inMessage = server.readSpawnMessage();
-				/*
-				For as many times as indicated by inMessage:
-					* start a worker server s[i]
-					* reply the client that a server s[i] has been started with an assigned port p[i]
-					* wait for an exit status message from each of the worker servers, act accordingly when receiving it
-						and eventually terminate the server
-				 */
-				threadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(inMessage.getServersNumber());
-
-				for (int i = 0; i < inMessage.getServersNumber(); i++) {
-					workerServers.add(primeFactorsServerFactory(PrimeFactorsServer.CONST_DEF_PORT, server.logEnabled));
-					threadPool.submit(workerServers.get(workerServers.size() - 1));
-					outMessage = new SpawnMessage(
-							workerServers.get(workerServers.size() - 1).connection.getInetAddress(),
-							workerServers.get(workerServers.size() - 1).connection.getLocalPort()
-					);
-					server.writeMessage(outMessage);
-				}
-
-				threadPool.shutdown();
-			} catch (EOFException e) {
-			} finally {
-				server.closeClient();
-			}
+		while (true) {
+			server.serveNextClient();
 		}
 	}
 
@@ -0,0 +1,380 @@
+package primefactor.net;
+
+import primefactor.net.MasterClient.CofactorTracker;
+import primefactor.net.MasterClient.RangeScheduler;
+import primefactor.net.message.ClientToServerMessage;
+import primefactor.net.message.ClientToServerMessage.FactorMessage;
+import primefactor.net.message.ClientToUserMessage;
+import primefactor.net.message.MessageStream;
+import primefactor.net.message.ServerToClientMessage;
+import primefactor.net.message.UserToClientMessage;
+import primefactor.util.BigMath;
+import primefactor.util.FactorizationCache;
+import primefactor.util.Metrics;
+import primefactor.util.ThreadPools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long lived connection to the worker servers of a {@link MasterServer}, over which any number of factoring requests
+ * can be outstanding at once.<br>
+ * The MasterServer is asked for worker endpoints once, when the session is opened, and the connections to the workers
+ * are kept open until the session is closed. The chunks of every request carry its id, which the workers echo in their
+ * replies: a reader thread per connection matches the replies back to their request, so that requests are pipelined
+ * over the same connections instead of each of them opening its own.<br>
+ * A session one of whose connections breaks is closed, failing the requests outstanding.
+ */
+public class MasterSession implements Closeable {
+
+	/**
+	 * Default number of connections: more of them than the fleet has compute threads, which is by default the number
+	 * of cores, only add overhead.
+	 */
+	public static final int CONST_DEF_CONNECTIONS = Math.min(
+			FactorMessage.CONST_DEFAULT_PARTITIONS, Runtime.getRuntime().availableProcessors()
+	);
+
+	/**
+	 * Time from the submission of each request distributed to its answer.
+	 */
+	private static final Metrics.Histogram requestNanos = Metrics.histogram("session.request.nanos");
+
+	private final WorkerConnection[] connections;
+	private final ConcurrentMap<Long, Request> requests = new ConcurrentHashMap<>();
+
+	private volatile FactorizationCache cache;
+	private volatile boolean closed;
+
+	/**
+	 * @param masterAddress location of the MasterServer, in the form "host:port".
+	 * @param connections number of worker servers to keep a connection with, must be > 0.
+	 */
+	public MasterSession (String masterAddress, int connections) throws IOException, ClassNotFoundException {
+		final List<ServerToClientMessage.SpawnMessage> endpoints;
+
+		if (connections <= 0) {
+			throw new IllegalArgumentException("connections parameter must be greater than 0");
+		}
+
+		try (MasterClient master = new MasterClient(masterAddress)) {
+			endpoints = master.spawn(connections);
+		}
+
+		this.connections = new WorkerConnection[connections];
+
+		try {
+			for (int i = 0; i < connections; i++) {
+				this.connections[i] = new WorkerConnection(i, endpoints.get(i));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+
+		for (WorkerConnection connection: this.connections) {
+			ThreadPools.io().execute(connection);
+		}
+	}
+
+	/**
+	 * @see MasterClient#setCache(FactorizationCache)
+	 */
+	public void setCache (FactorizationCache cache) {
+		this.cache = cache;
+	}
+
+	public FactorizationCache getCache () {
+		return cache;
+	}
+
+	/**
+	 * Sends the request of factoring n to the worker servers, and returns at once.
+	 * @return a future completed with the complete list of factors of n, on the reader thread of the connection the
+	 * last reply came from: callbacks chained to it should not block.
+	 */
+	public CompletableFuture<ClientToUserMessage> submit (UserToClientMessage.FactorMessage userInMessage) {
+		final FactorizationCache cache = this.cache;
+		final List<BigInteger> cached = cache == null ? null : cache.get(userInMessage.getN());
+		final CompletableFuture<ClientToUserMessage> result;
+		final CofactorTracker tracker;
+
+		if (cached != null) {
+			return CompletableFuture.completedFuture(
+					new ClientToUserMessage(userInMessage.getN(), cached.toArray(new BigInteger[0]))
+			);
+		}
+
+		if (closed) {
+			result = new CompletableFuture<>();
+			result.completeExceptionally(new IOException("The session is closed"));
+
+			return result;
+		}
+
+		tracker = new CofactorTracker(userInMessage.getN(), MasterClient.CONST_PRIME_CERTAINTY);
+
+		if (tracker.isComplete()) {
+			//n is prime, there is nothing to distribute
+			return CompletableFuture.completedFuture(
+					MasterClient.computeFinalMessage(new ClientToUserMessage(userInMessage.getN()), tracker)
+			);
+		}
+
+		return new Request(userInMessage, tracker).start();
+	}
+
+	/**
+	 * Factors n as {@link MasterClient#factor(UserToClientMessage.FactorMessage)} does, over the connections of this
+	 * session.
+	 */
+	public ClientToUserMessage factor (UserToClientMessage.FactorMessage userInMessage) throws Exception {
+		return submit(userInMessage).get();
+	}
+
+	/**
+	 * @return the number of requests sent and not answered yet.
+	 */
+	public int getPending () {
+		return requests.size();
+	}
+
+	public int getConnections () {
+		return connections.length;
+	}
+
+	@Override
+	public void close () {
+		close(new IOException("The session is closed"));
+	}
+
+	private void close (Throwable cause) {
+		closed = true;
+
+		for (WorkerConnection connection: connections) {
+			if (connection != null) {
+				connection.close();
+			}
+		}
+
+		for (Request request: requests.values()) {
+			request.fail(cause);
+		}
+	}
+
+	/**
+	 * A connection with a worker server, along with the thread reading its replies.
+	 */
+	private class WorkerConnection implements Runnable {
+
+		private final int index;
+		private final Socket socket;
+		private final MessageStream stream;
+
+		WorkerConnection (int index, ServerToClientMessage.SpawnMessage endpoint) throws IOException {
+			this.index = index;
+			this.socket = new Socket(endpoint.getAddress(), endpoint.getPort());
+			this.socket.setTcpNoDelay(true);
+			this.stream = MessageStream.connect(socket, MasterClient.CONST_BINARY_PROTOCOL);
+		}
+
+		/**
+		 * Can be called from any thread.
+		 */
+		void write (ClientToServerMessage message) {
+			try {
+				stream.writeMessage(message);
+			} catch (IOException e) {
+				MasterSession.this.close(e);
+			}
+		}
+
+		@Override
+		public void run () {
+			ServerToClientMessage message;
+			Request request;
+
+			try {
+				while (true) {
+					message = (ServerToClientMessage) stream.readMessage();
+
+					//Replies to requests which were already answered, or cancelled, are dropped
+					if (message instanceof ServerToClientMessage.BatchMessage) {
+						request = requests.get(((ServerToClientMessage.BatchMessage) message).getId());
+
+						if (request != null) {
+							request.tracker.addFactors(((ServerToClientMessage.BatchMessage) message).getFactors());
+						}
+					} else if (message instanceof ServerToClientMessage.DoneMessage) {
+						request = requests.get(((ServerToClientMessage.DoneMessage) message).getId());
+
+						if (request != null) {
+							request.onDone(index, (ServerToClientMessage.DoneMessage) message);
+						}
+					}
+				}
+			} catch (IOException | ClassNotFoundException e) {
+				if (!closed) {
+					MasterSession.this.close(e);
+				}
+			}
+
+			try {
+				stream.close(); //Records the traffic of the connection
+			} catch (IOException e) {
+				//The socket is closed already
+			}
+		}
+
+		void close () {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				//Nothing else can be done
+			}
+		}
+
+	}
+
+	/**
+	 * A factoring request, spread over one lane per connection it uses, each lane sending the chunks the scheduler hands
+	 * out to it one after the other, or a replica of the whole request for algorithms which are not range based. The
+	 * request is answered once every lane ran out of chunks or answered its replica, or as soon as n is fully factored,
+	 * cancelling the work left.
+	 */
+	private class Request {
+
+		private final FactorMessage serverOutMessage;
+		private final CofactorTracker tracker;
+		private final RangeScheduler scheduler;
+		private final int workers;
+		private final AtomicInteger lanes;
+		private final AtomicBoolean finished = new AtomicBoolean();
+		private final CompletableFuture<ClientToUserMessage> result = new CompletableFuture<>();
+		private final long start = System.nanoTime();
+
+		/**
+		 * @param tracker tracker of the cofactor of n, which must not be complete yet.
+		 */
+		Request (UserToClientMessage.FactorMessage userInMessage, CofactorTracker tracker) {
+			this.serverOutMessage = MasterClient.newServerMessage(userInMessage);
+			this.tracker = tracker;
+			this.workers = MasterClient.workersFor(serverOutMessage, connections.length);
+			this.lanes = new AtomicInteger(workers);
+
+			if (serverOutMessage.getAlgorithm().isRangeBased()) {
+				this.scheduler = new RangeScheduler(serverOutMessage, workers, MasterClient.CONST_CHUNKS_PER_WORKER);
+			} else {
+				this.scheduler = null;
+			}
+		}
+
+		CompletableFuture<ClientToUserMessage> start () {
+			requests.put(serverOutMessage.getId(), this);
+			if (closed) {
+				fail(new IOException("The session is closed")); //Closed after the check of submit, before the put above
+				return result;
+			}
+
+			tracker.getCompletion().thenRun(this::cancel);
+
+			if (scheduler != null) {
+				for (int lane = 0; lane < workers; lane++) {
+					sendNext(lane);
+				}
+			} else {
+				final List<FactorMessage> replicas = serverOutMessage.replicate(workers);
+
+				for (int lane = 0; lane < workers; lane++) {
+					connections[lane].write(replicas.get(lane));
+				}
+			}
+
+			return result;
+		}
+
+		void onDone (int lane, ServerToClientMessage.DoneMessage done) {
+			if (done.isFactored()) {
+				tracker.markFactored();
+			}
+
+			if (scheduler != null) {
+				sendNext(lane);
+			} else if (lanes.decrementAndGet() == 0) {
+				//Each server factors n as a whole: a replica whose factorization is incomplete, as Pollard's rho may
+				//leave it, does not end the request, which waits for the others unless the tracker completes first
+				finish();
+			}
+		}
+
+		private void sendNext (int lane) {
+			final FactorMessage chunk = scheduler.next(lane);
+
+			if (chunk == null) {
+				if (lanes.decrementAndGet() == 0) {
+					finish();
+				}
+				return;
+			}
+
+			connections[lane].write(chunk);
+
+			if (tracker.isComplete()) {
+				//n was factored while chunk was being sent, after cancellations were broadcast
+				connections[lane].write(new ClientToServerMessage.CancelMessage(serverOutMessage.getId()));
+			}
+		}
+
+		private void cancel () {
+			if (finished.get()) {
+				return;
+			}
+
+			if (scheduler != null) {
+				scheduler.cancel();
+			}
+
+			for (int lane = 0; lane < workers; lane++) {
+				connections[lane].write(new ClientToServerMessage.CancelMessage(serverOutMessage.getId()));
+			}
+
+			finish();
+		}
+
+		private void finish () {
+			final ClientToUserMessage message;
+			final FactorizationCache cache = MasterSession.this.cache;
+
+			if (!finished.compareAndSet(false, true)) {
+				return;
+			}
+
+			requests.remove(serverOutMessage.getId(), this);
+			message = MasterClient.computeFinalMessage(new ClientToUserMessage(serverOutMessage.getN()), tracker);
+
+			if (cache != null && BigMath.multiply(message.getFactors()).equals(serverOutMessage.getN())) {
+				cache.put(serverOutMessage.getN(), message.getFactors());
+			}
+
+			requestNanos.recordSince(start);
+			result.complete(message);
+		}
+
+		void fail (Throwable cause) {
+			if (finished.compareAndSet(false, true)) {
+				requests.remove(serverOutMessage.getId(), this);
+				result.completeExceptionally(cause);
+			}
+		}
+
+	}
+
+}
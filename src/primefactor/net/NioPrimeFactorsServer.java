@@ -0,0 +1,310 @@
+package primefactor.net;
+
+import primefactor.net.message.ClientToServerMessage.CancelMessage;
+import primefactor.net.message.ClientToServerMessage.FactorMessage;
+import primefactor.net.message.Message;
+import primefactor.net.message.MessageCodec;
+import primefactor.net.message.ServerToClientMessage;
+import primefactor.util.BigMath;
+import primefactor.util.Metrics;
+import primefactor.util.PrimeSource;
+import primefactor.util.RangeCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link PrimeFactorsServer} built on {@link SelectorServer}: idle connections cost no thread, and factoring runs on
+ * the compute pool.<br>
+ * Only the binary protocol of {@link MessageCodec} is spoken; clients opening with a Java serialization stream header
+ * are disconnected. The messages of a connection are answered one at a time, in the order they were received; a
+ * CancelMessage however takes effect as soon as it is read, whether the request it cancels is running or still
+ * waiting for the previous ones to be answered.<br>
+ * Once CONST_MAX_PENDING_PER_THREAD requests per compute thread are waiting or running, the server stops reading from
+ * the clients sending more, until some of them are answered.<br>
+ * Messages and bytes are counted under the same metrics as those of {@link primefactor.net.message.MessageStream}.
+ */
+public class NioPrimeFactorsServer extends SelectorServer {
+
+	public static final int CONST_DEF_SELECTOR_THREADS = 2;
+	/**
+	 * Number of requests per compute thread which can be waiting or running before clients are held back.
+	 */
+	public static final int CONST_MAX_PENDING_PER_THREAD = 1 + PrimeFactorsServer.CONST_QUEUED_CLIENTS_PER_THREAD;
+
+	private static final LongAdder messagesIn = Metrics.counter("stream.messages.in");
+	private static final LongAdder messagesOut = Metrics.counter("stream.messages.out");
+	private static final LongAdder bytesIn = Metrics.counter("stream.bytes.in");
+	private static final LongAdder bytesOut = Metrics.counter("stream.bytes.out");
+	private static final Metrics.Histogram connectionMessages = Metrics.histogram("connection.messages");
+	private static final Metrics.Histogram connectionBytes = Metrics.histogram("connection.bytes");
+
+	/**
+	 * Requests received and not answered yet, across all clients, and the clients held back meanwhile.
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+	private final Queue<Connection> paused = new ConcurrentLinkedQueue<>();
+	private final int maxPending;
+
+	private volatile RangeCache rangeCache;
+
+	/**
+	 * Bounds the requests let in as if computePool had a thread per core.
+	 * @see NioPrimeFactorsServer#NioPrimeFactorsServer(int, int, ExecutorService, int, boolean)
+	 */
+	public NioPrimeFactorsServer (int port, int selectorThreads, ExecutorService computePool, boolean logEnabled) throws IOException {
+		this(port, selectorThreads, computePool, Runtime.getRuntime().availableProcessors(), logEnabled);
+	}
+
+	/**
+	 * @param computeThreads number of threads of computePool, which the number of requests let in is bound to.
+	 * @see SelectorServer#SelectorServer(int, int, ExecutorService, boolean)
+	 */
+	public NioPrimeFactorsServer (int port, int selectorThreads, ExecutorService computePool, int computeThreads, boolean logEnabled) throws IOException {
+		super(port, selectorThreads, computePool, logEnabled);
+
+		if (computeThreads <= 0) {
+			throw new IllegalArgumentException("computeThreads parameter must be greater than 0");
+		}
+
+		this.maxPending = computeThreads * CONST_MAX_PENDING_PER_THREAD;
+	}
+
+	/**
+	 * @see PrimeFactorsServer#setRangeCache(RangeCache)
+	 */
+	public void setRangeCache (RangeCache rangeCache) {
+		this.rangeCache = rangeCache;
+	}
+
+	public RangeCache getRangeCache () {
+		return rangeCache;
+	}
+
+	@Override
+	protected void onNextClient (Connection client) {
+		client.setAttachment(new ClientState());
+	}
+
+	@Override
+	protected void onRead (Connection client, ByteBuffer data) throws IOException {
+		final ClientState state = (ClientState) client.getAttachment();
+		int length;
+		byte[] frame;
+
+		if (!state.negotiated) {
+			if (data.remaining() < Integer.BYTES) {
+				return;
+			}
+			if (data.getInt() != MessageCodec.CONST_MAGIC) {
+				client.close();
+				return;
+			}
+
+			state.negotiated = true;
+			state.bytes.addAndGet(2 * Integer.BYTES);
+			//Buffer.flip() only returns a ByteBuffer from Java 9 on, the cast keeps this compiling for Java 8
+			client.write((ByteBuffer) ByteBuffer.allocate(Integer.BYTES).putInt(MessageCodec.CONST_MAGIC).flip());
+		}
+
+		while (data.remaining() >= Integer.BYTES) {
+			length = data.getInt(data.position());
+
+			if (length <= 0 || length > MessageCodec.CONST_MAX_MESSAGE_BYTES) {
+				client.close();
+				return;
+			}
+			if (data.remaining() < Integer.BYTES + length) {
+				return; //Wait for the rest of the frame
+			}
+
+			data.getInt();
+			frame = new byte[length];
+			data.get(frame);
+
+			onFrame(client, state, frame);
+		}
+	}
+
+	@Override
+	protected void onCloseClient (Connection client) {
+		final ClientState state = (ClientState) client.getAttachment();
+
+		//Nobody is left to read the results of the requests in progress
+		for (AtomicBoolean cancelled: state.requests.values()) {
+			cancelled.set(true);
+		}
+
+		connectionMessages.record(state.messages.get());
+		connectionBytes.record(state.bytes.get());
+	}
+
+	private void onFrame (Connection client, ClientState state, byte[] frame) throws IOException {
+		final Message inMessage;
+
+		state.messages.incrementAndGet();
+		state.bytes.addAndGet(Integer.BYTES + frame.length);
+		messagesIn.increment();
+		bytesIn.add(Integer.BYTES + frame.length);
+
+		try {
+			inMessage = MessageCodec.decode(new DataInputStream(new ByteArrayInputStream(frame)));
+		} catch (ClassNotFoundException e) {
+			write(client, state, new ServerToClientMessage.InvalidMessage());
+			return;
+		}
+
+		if (logEnabled) {
+			log(inMessage.toString());
+		}
+
+		if (inMessage instanceof CancelMessage) {
+			final AtomicBoolean cancelled = state.requests.get(((CancelMessage) inMessage).getId());
+
+			if (cancelled != null) {
+				cancelled.set(true);
+			}
+			return;
+		}
+
+		if (!(inMessage instanceof FactorMessage)) {
+			write(client, state, new ServerToClientMessage.InvalidMessage());
+			return;
+		}
+
+		final long id = ((FactorMessage) inMessage).getId();
+		final AtomicBoolean cancelled = new AtomicBoolean();
+
+		state.requests.put(id, cancelled);
+
+		if (pending.incrementAndGet() >= maxPending) {
+			client.pauseReading();
+			paused.add(client);
+
+			//The requests in progress may all have been answered before client was queued
+			if (pending.get() < maxPending) {
+				resumeAll();
+			}
+		}
+
+		//Chain onto the previous message of the same client, so that replies are not interleaved, whether or not it failed
+		state.tail = state.tail.handle((result, e) -> (Void) null).thenRunAsync(() -> {
+			try {
+				for (ServerToClientMessage outMessage: PrimeFactorsServer.reply((FactorMessage) inMessage, cancelled::get, rangeCache)) {
+					if (logEnabled) {
+						log(outMessage.toString());
+					}
+
+					write(client, state, outMessage);
+				}
+			} catch (IOException e) {
+				client.close();
+			} catch (RuntimeException e) {
+				//Such as a segment of the prime store which cannot be read: the request cannot be answered, nor can the
+				//client tell which one an InvalidMessage would be about, so it is disconnected
+				log(String.format("Request %d failed: %s", id, e));
+				client.close();
+			} finally {
+				state.requests.remove(id, cancelled);
+
+				if (pending.decrementAndGet() < maxPending) {
+					resumeAll();
+				}
+			}
+		}, getComputePool());
+	}
+
+	private void resumeAll () {
+		Connection client;
+
+		while ((client = paused.poll()) != null) {
+			client.resumeReading();
+		}
+	}
+
+	private static void write (Connection client, ClientState state, Message message) throws IOException {
+		final ByteBuffer data = encode(message);
+
+		state.messages.incrementAndGet();
+		state.bytes.addAndGet(data.remaining());
+		messagesOut.increment();
+		bytesOut.add(data.remaining());
+
+		client.write(data);
+	}
+
+	/**
+	 * @return a buffer, ready to be written, holding message framed with its length.
+	 */
+	private static ByteBuffer encode (Message message) throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(buffer);
+
+		out.writeInt(0); //Placeholder for the length
+		MessageCodec.encode(message, out);
+
+		return ByteBuffer.wrap(buffer.toByteArray()).putInt(0, buffer.size() - Integer.BYTES);
+	}
+
+	/**
+	 * @param args String array containing Program arguments.  It should contain
+	 *             one String indicating the port it should connect to, optionally followed by
+	 *             the number of factoring threads.
+	 *             Defaults to port 4444 and one factoring thread per core.
+	 */
+	public static void main (String[] args) throws IOException, InterruptedException {
+		final NioPrimeFactorsServer server;
+		int port = PrimeFactorsServer.CONST_DEF_PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		if (args.length > 0) {
+			port = BaseServer.parsePort(args[0], port);
+		}
+		if (args.length > 1) {
+			threads = Math.max(1, BaseServer.parseInt(args[1], threads));
+		}
+
+		//Unbounded, so that the selector threads never block nor factor: the server bounds the requests let in instead
+		server = new NioPrimeFactorsServer(
+				port, CONST_DEF_SELECTOR_THREADS, Executors.newFixedThreadPool(threads), threads, true
+		);
+		server.setRangeCache(new RangeCache());
+		Metrics.registerMBean();
+		BigMath.setPrimeSource(PrimeSource.fromSystemProperties());
+		server.start();
+
+		Thread.currentThread().join();
+	}
+
+	private static class ClientState {
+
+		private boolean negotiated;
+		private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+		/**
+		 * Cancellation flags of the requests received and not answered yet, by id.
+		 */
+		private final ConcurrentMap<Long, AtomicBoolean> requests = new ConcurrentHashMap<>();
+		/**
+		 * Messages and bytes read and written over the connection, protocol negotiation included.
+		 */
+		private final AtomicLong messages = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+
+	}
+
+}
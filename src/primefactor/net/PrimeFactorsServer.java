@@ -2,18 +2,37 @@ package primefactor.net;
 
 import primefactor.net.message.ClientToServerMessage;
 import primefactor.net.message.ClientToServerMessage.FactorMessage;
+import primefactor.net.message.MessageStream;
 import primefactor.net.message.ServerToClientMessage;
 import primefactor.net.message.ServerToClientMessage.DoneMessage;
 import primefactor.util.BigMath;
+import primefactor.util.FactoringAlgorithm;
+import primefactor.util.Metrics;
+import primefactor.util.PrimeSource;
+import primefactor.util.RangeCache;
+import primefactor.util.ThreadPools;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InterruptedIOException;
 import java.math.BigInteger;
 import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 
 /**
  * PrimeFactorsServer performs the "server-side" algorithm
@@ -38,9 +57,26 @@ public class PrimeFactorsServer extends BaseServer implements Callable<DoneMessa
 	 * Certainty variable for BigInteger isProbablePrime() function.
 	 */
 	public final static int CONST_PRIME_CERTAINTY = 10;
+	/**
+	 * In concurrent mode, number of accepted clients per thread which can wait to be served.
+	 */
+	public static final int CONST_QUEUED_CLIENTS_PER_THREAD = 4;
+	/**
+	 * Thresholds past which the prime factors found are flushed to the client in a new BatchMessage.
+	 */
+	public static final int CONST_BATCH_MAX_PRIMES = 256;
+	public static final int CONST_BATCH_MAX_BYTES = 16 * 1024;
 
-	private ObjectInputStream in;
-	private ObjectOutputStream out;
+	/**
+	 * Time taken to compute the reply to each request, and number of requests cancelled before completion.
+	 */
+	private static final Metrics.Histogram replyNanos = Metrics.histogram("server.reply.nanos");
+	private static final LongAdder cancelledRequests = Metrics.counter("server.cancelled");
+
+	private MessageStream stream;
+	private Conversation conversation;
+	private volatile RangeCache rangeCache;
+	private volatile ForkJoinPool forkJoinPool;
 
 	public PrimeFactorsServer (boolean logEnabled) throws IOException {
 		this(CONST_DEF_PORT, logEnabled);
@@ -50,10 +86,35 @@ public class PrimeFactorsServer extends BaseServer implements Callable<DoneMessa
 		super(port, logEnabled);
 	}
 
+	/**
+	 * @param rangeCache cache the prime factors found in ranges are kept in, so that a range asked for again is not
+	 *                   factored twice, or null for none. It can be shared by many servers.
+	 */
+	public void setRangeCache (RangeCache rangeCache) {
+		this.rangeCache = rangeCache;
+	}
+
+	public RangeCache getRangeCache () {
+		return rangeCache;
+	}
+
+	/**
+	 * @param forkJoinPool pool the range of a trial division request is split across, see
+	 *                     {@link BigMath#primeFactorsOf(BigInteger, BigInteger, BigInteger, int, BooleanSupplier, ForkJoinPool)},
+	 *                     or null for factoring it in the thread serving the request.
+	 */
+	public void setForkJoinPool (ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	public ForkJoinPool getForkJoinPool () {
+		return forkJoinPool;
+	}
+
 	@Override
 	protected void onNextClient (Socket client) throws IOException {
-		out = new ObjectOutputStream(client.getOutputStream());
-		in = new ObjectInputStream(client.getInputStream());
+		stream = MessageStream.accept(client);
+		conversation = new Conversation(stream);
 	}
 
 	@Override
@@ -62,21 +123,36 @@ public class PrimeFactorsServer extends BaseServer implements Callable<DoneMessa
 	}
 
 	public FactorMessage readClientFactorMessage () throws IOException, ClassNotFoundException {
-		final ClientToServerMessage result = (ClientToServerMessage) in.readObject();
+		return readClientFactorMessage(conversation);
+	}
 
-		if (logEnabled) {
-			log(result.toString());
-		}
+	/**
+	 * Reads the next FactorMessage of client, skipping CancelMessages for requests which were already answered.
+	 */
+	private FactorMessage readClientFactorMessage (Conversation client) throws IOException, ClassNotFoundException {
+		ClientToServerMessage result;
+
+		do {
+			result = client.read();
+
+			if (logEnabled) {
+				log(result.toString());
+			}
+		} while (result instanceof ClientToServerMessage.CancelMessage);
 
 		return (FactorMessage) result;
 	}
 
 	public void writeMessage (ServerToClientMessage message) throws IOException {
+		writeMessage(stream, message);
+	}
+
+	private void writeMessage (MessageStream stream, ServerToClientMessage message) throws IOException {
 		if (logEnabled) {
 			log(message.toString());
 		}
 
-		out.writeObject(message);
+		stream.writeMessage(message);
 	}
 
 	@Override
@@ -91,31 +167,134 @@ public class PrimeFactorsServer extends BaseServer implements Callable<DoneMessa
 
 	@Override
 	protected void onCloseClient () throws IOException {
-		out.close();
-		in.close();
+		stream.close();
 	}
 
 	/**
 	 * Starts a communication with a {@link MasterClient} reporting errors or returning a DoneMessage in case of
-	 * success.
-	 * @return a DoneMessage instance if the communication was without errors, null otherwise.
+	 * success. The client can send any number of FactorMessages, each of them being answered in turn, until it closes
+	 * the connection.
+	 * @return the last DoneMessage sent if the communication was without errors, null otherwise.
 	 * @throws Exception currently no exceptions are directly thrown.
 	 */
 	@Override
 	public DoneMessage call () throws Exception {
+		DoneMessage result = null, done;
+
+		nextClient();
+		while ((done = serve(conversation)) != null) {
+			result = done;
+		}
+		closeClient();
+
+		return result;
+	}
+
+	/**
+	 * Serves clients concurrently until this server is closed, as opposed to {@link PrimeFactorsServer#call()} which
+	 * serves a single one. Each accepted connection is handed to workers; when all of them are busy and their queue
+	 * is full, the connection is served by the calling thread, which stops accepting new clients in the meantime.
+	 * @param workers pool serving the connections, see {@link PrimeFactorsServer#newWorkerPool(int, int)}.
+	 */
+	public void listen (ExecutorService workers) throws IOException {
+		listen(workers, null);
+	}
+
+	/**
+	 * Serves clients concurrently as {@link PrimeFactorsServer#listen(ExecutorService)} does, each connection being
+	 * served by a thread of connections which hands the factoring of every request to compute: a connection waiting
+	 * for its next request then holds no compute thread.
+	 * @param connections executor serving the connections, ideally one thread per connection such as
+	 *                    {@link ThreadPools#newPerTaskExecutor(String)}.
+	 * @param compute pool factoring the requests, see {@link PrimeFactorsServer#newComputePool(int, int)}, or null to
+	 *                factor them in the threads of connections.
+	 */
+	public void listen (ExecutorService connections, ExecutorService compute) throws IOException {
+		Socket client;
+
+		while (!connection.isClosed()) {
+			try {
+				client = connection.accept();
+				client.setTcpNoDelay(true);
+			} catch (SocketException e) {
+				if (connection.isClosed()) {
+					break;
+				}
+				throw e;
+			}
+
+			connections.execute(new ConnectionHandler(client, compute));
+		}
+	}
+
+	/**
+	 * @param threads number of connections served at the same time.
+	 * @param queueCapacity number of accepted connections which can wait for a free thread.
+	 * @return a bounded pool suitable for {@link PrimeFactorsServer#listen(ExecutorService)}, running rejected
+	 * connections in the thread which submitted them. It is meant for serving connections only: factoring must run in
+	 * a pool of {@link PrimeFactorsServer#newComputePool(int, int)}.
+	 */
+	public static ThreadPoolExecutor newWorkerPool (int threads, int queueCapacity) {
+		return new ThreadPoolExecutor(
+				threads, threads,
+				0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadPoolExecutor.CallerRunsPolicy()
+		);
+	}
+
+	/**
+	 * @param threads number of requests factored at the same time.
+	 * @param queueCapacity number of requests which can wait for a free thread.
+	 * @return a bounded pool suitable for {@link PrimeFactorsServer#listen(ExecutorService, ExecutorService)}. Once its
+	 * queue is full, submitting a request blocks until there is room for it: factoring never runs in the thread which
+	 * submitted it, which may be one of the many threads serving connections.
+	 */
+	public static ThreadPoolExecutor newComputePool (int threads, int queueCapacity) {
+		return new ThreadPoolExecutor(
+				threads, threads,
+				0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				(task, executor) -> {
+					if (executor.isShutdown()) {
+						throw new RejectedExecutionException("Compute pool is shut down");
+					}
+
+					try {
+						executor.getQueue().put(task);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RejectedExecutionException(e);
+					}
+				}
+		);
+	}
+
+	/**
+	 * Reads a FactorMessage from client, and writes back the prime factors found followed by a DoneMessage. If the
+	 * client cancels the request meanwhile, only the prime factors found until then are written.
+	 * @return the DoneMessage written, or null if the client closed the connection before sending a valid message.
+	 */
+	private DoneMessage serve (Conversation client) throws IOException {
+		return serve(client, null);
+	}
+
+	/**
+	 * @param compute pool the reply is computed in, or null for the calling thread.
+	 * @see PrimeFactorsServer#serve(Conversation)
+	 */
+	private DoneMessage serve (Conversation client, ExecutorService compute) throws IOException {
+		final MessageStream stream = client.stream;
 		FactorMessage inMessage = null;
 		ServerToClientMessage outMessage = null;
-		List<BigInteger> primes;
 		boolean isClientMessageValid;
 
-		nextClient();
-
 		do {
 			try {
-				inMessage = readClientFactorMessage();
+				inMessage = readClientFactorMessage(client);
 				isClientMessageValid = true;
 			} catch (ClassNotFoundException e) {
-				writeMessage(new ServerToClientMessage.InvalidMessage());
+				writeMessage(stream, new ServerToClientMessage.InvalidMessage());
 				isClientMessageValid = false;
 			} catch (EOFException e) {
 				isClientMessageValid = false;
@@ -124,55 +303,341 @@ public class PrimeFactorsServer extends BaseServer implements Callable<DoneMessa
 		} while (!isClientMessageValid);
 
 		if (isClientMessageValid) {
-			primes = BigMath.primeFactorsOf(
-					inMessage.getN(),
-					inMessage.getLowBound(),
-					inMessage.getHighBound(),
-					CONST_PRIME_CERTAINTY
+			final FactorMessage request = inMessage;
+			final BooleanSupplier cancelled = client.cancellation(request.getId());
+			final RangeCache cache = rangeCache;
+			final ForkJoinPool pool = forkJoinPool;
+			final List<ServerToClientMessage> replies;
+
+			if (compute == null) {
+				replies = reply(request, cancelled, cache, pool);
+			} else {
+				try {
+					replies = compute.submit(() -> reply(request, cancelled, cache, pool)).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				} catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				}
+			}
+
+			for (ServerToClientMessage message: replies) {
+				outMessage = message;
+				writeMessage(stream, outMessage);
+			}
+		}
+
+		return (DoneMessage) outMessage;
+	}
+
+	/**
+	 * Factors the number of inMessage as it requests.
+	 * @param cancelled checked every now and then: once it returns true, factoring stops and only the prime factors
+	 *                  found until then are replied.
+	 * @return the messages to answer inMessage with: BatchMessages holding the prime factors found, followed by a
+	 * DoneMessage reporting the cofactor of n left.
+	 */
+	static List<ServerToClientMessage> reply (FactorMessage inMessage, BooleanSupplier cancelled) {
+		return reply(inMessage, cancelled, null);
+	}
+
+	/**
+	 * @param cache cache the prime factors of range based requests are looked up in and put into, or null for none.
+	 * @see PrimeFactorsServer#reply(FactorMessage, BooleanSupplier)
+	 */
+	static List<ServerToClientMessage> reply (FactorMessage inMessage, BooleanSupplier cancelled, RangeCache cache) {
+		return reply(inMessage, cancelled, cache, null);
+	}
+
+	/**
+	 * @param pool pool the ranges of range based requests are split across, or null for the calling thread.
+	 * @see PrimeFactorsServer#reply(FactorMessage, BooleanSupplier, RangeCache)
+	 */
+	static List<ServerToClientMessage> reply (FactorMessage inMessage, BooleanSupplier cancelled, RangeCache cache, ForkJoinPool pool) {
+		final List<ServerToClientMessage> result;
+		final List<BigInteger> primes;
+		final BigInteger cofactor;
+		final boolean factored;
+		final long start = System.nanoTime();
+
+		if (inMessage.getAlgorithm().isRangeBased() && cache != null) {
+			primes = primeFactorsOf(inMessage, cancelled, cache, pool);
+		} else if (inMessage.getAlgorithm().isRangeBased()) {
+			primes = primeFactorsOf(
+					inMessage.getN(), inMessage.getLowBound(), inMessage.getHighBound(), inMessage.getAlgorithm(), cancelled, pool
 			);
+		} else {
+			primes = inMessage.getAlgorithm().newInstance(inMessage.getSeed()).primeFactorsOf(inMessage.getN(), cancelled);
+		}
+
+		cofactor = inMessage.getN().divide(BigMath.multiply(primes));
 
-			for (BigInteger prime: primes) {
-				outMessage = new ServerToClientMessage.FoundMessage(
+		if (cancelled.getAsBoolean()) {
+			factored = false;
+			cancelledRequests.increment();
+		} else if (inMessage.getAlgorithm().isRangeBased()) {
+			//Having tried every prime up to high, a cofactor <= high^2 has no prime factor but itself
+			factored = inMessage.getLowBound().compareTo(FactorMessage.CONST_MIN_LOW_BOUND) <= 0 &&
+					cofactor.compareTo(inMessage.getHighBound().multiply(inMessage.getHighBound())) <= 0;
+		} else {
+			factored = true;
+		}
+
+		result = new LinkedList<>(batch(inMessage.getN(), inMessage.getId(), primes));
+		result.add(
+				new DoneMessage(
 						inMessage.getN(),
-						prime
-				);
-				writeMessage(outMessage);
-			}
+						inMessage.getLowBound(),
+						inMessage.getHighBound(),
+						cofactor,
+						factored,
+						inMessage.getId()
+				)
+		);
+		replyNanos.recordSince(start);
+
+		return result;
+	}
 
-			outMessage = new DoneMessage(
-					inMessage.getN(),
-					inMessage.getLowBound(),
-					inMessage.getHighBound()
+	/**
+	 * Finds the prime factors of n in the range of inMessage, only factoring the parts of it which are not cached yet
+	 * and caching them in turn, unless cancelled.
+	 * @return the prime factors found, in increasing order.
+	 */
+	private static List<BigInteger> primeFactorsOf (FactorMessage inMessage, BooleanSupplier cancelled, RangeCache cache, ForkJoinPool pool) {
+		final RangeCache.Lookup lookup = cache.lookup(
+				inMessage.getN(), inMessage.getLowBound(), inMessage.getHighBound()
+		);
+		final List<BigInteger> result = new ArrayList<>(lookup.getFactors());
+		List<BigInteger> gapPrimes;
+		BigInteger remaining = inMessage.getN().divide(BigMath.multiply(result));
+
+		for (RangeCache.Range gap: lookup.getGaps()) {
+			//The primes divided out of n so far lie outside of gap, the smaller number has the same prime factors in it
+			gapPrimes = primeFactorsOf(
+					remaining, gap.getLowBound(), gap.getHighBound(), inMessage.getAlgorithm(), cancelled, pool
 			);
-			writeMessage(outMessage);
+
+			if (cancelled.getAsBoolean()) {
+				result.addAll(gapPrimes);
+				break;
+			}
+
+			cache.put(inMessage.getN(), gap.getLowBound(), gap.getHighBound(), gapPrimes);
+			result.addAll(gapPrimes);
+			remaining = remaining.divide(BigMath.multiply(gapPrimes));
 		}
 
-		closeClient();
+		Collections.sort(result);
 
-		return (DoneMessage) outMessage;
+		return result;
 	}
 
 	/**
-	 * @param args String array containing Program arguments.  It should only
-	 *             contain one String indicating the port it should connect to.
-	 *             Defaults to port 4444 if no Program argument is present.
+	 * @param algorithm range based algorithm to search [low, high] with.
+	 * @param pool pool [low, high] is split across, or null for searching it in the calling thread. Batched trial
+	 *             division always runs in the calling thread.
+	 * @return the prime factors of n in [low, high].
+	 */
+	private static List<BigInteger> primeFactorsOf (BigInteger n, BigInteger low, BigInteger high, FactoringAlgorithm.Type algorithm, BooleanSupplier cancelled, ForkJoinPool pool) {
+		if (algorithm == FactoringAlgorithm.Type.BATCH_TRIAL_DIVISION) {
+			return BigMath.primeFactorsOfBatched(n, low, high, CONST_PRIME_CERTAINTY, cancelled);
+		}
+		if (pool == null) {
+			return BigMath.primeFactorsOf(n, low, high, CONST_PRIME_CERTAINTY, cancelled);
+		}
+
+		return BigMath.primeFactorsOf(n, low, high, CONST_PRIME_CERTAINTY, cancelled, pool);
+	}
+
+	/**
+	 * Splits primes into BatchMessages, each of them holding at most CONST_BATCH_MAX_PRIMES distinct primes or about
+	 * CONST_BATCH_MAX_BYTES bytes of them.
+	 * @param id id of the request the primes answer.
+	 * @param primes prime factors of n, equal primes being next to each other.
+	 */
+	static List<ServerToClientMessage.BatchMessage> batch (BigInteger n, long id, List<BigInteger> primes) {
+		final List<ServerToClientMessage.BatchMessage> result = new LinkedList<>();
+		ServerToClientMessage.BatchMessage batch = new ServerToClientMessage.BatchMessage(n, id);
+		int batchBytes = 0;
+
+		for (BigInteger prime: primes) {
+			if (batch.size() > 0 && !batch.getPrimes().get(batch.size() - 1).equals(prime) &&
+					(batch.size() >= CONST_BATCH_MAX_PRIMES || batchBytes >= CONST_BATCH_MAX_BYTES)) {
+				result.add(batch);
+				batch = new ServerToClientMessage.BatchMessage(n, id);
+				batchBytes = 0;
+			}
+
+			batch.addFactor(prime, 1);
+			batchBytes += prime.bitLength() / Byte.SIZE + 1;
+		}
+
+		if (batch.size() > 0) {
+			result.add(batch);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param args String array containing Program arguments.  It should contain
+	 *             one String indicating the port it should connect to, optionally followed by
+	 *             the number of requests to factor concurrently, in which case clients are all served
+	 *             at once, each by a thread of its own.
+	 *             Defaults to port 4444, serving one client at a time, if no Program argument is present.
+	 *             A server factoring one request at a time splits its range across every core instead.
+	 *             Divisors are drawn from the source {@link PrimeSource#fromSystemProperties()} picks:
+	 *             the {@link primefactor.util.PrimeStore} in the directory named by the system property
+	 *             "primefactor.primes.store", filled in the background up to "primefactor.primes.store.bound";
+	 *             else the {@link primefactor.util.PrimeTable} in the file named by "primefactor.primes.table",
+	 *             built first up to "primefactor.primes.bound" if missing. The store wins when both are set.
 	 */
 	public static void main (String[] args) throws IOException {
 		final PrimeFactorsServer server;
+		int threads = 1;
 
 		if (args.length > 0) {
 			server = new PrimeFactorsServer(parsePort(args[0], CONST_DEF_PORT), true);
+
+			if (args.length > 1) {
+				threads = Math.max(1, parseInt(args[1], 1));
+			}
 		} else {
 			server = new PrimeFactorsServer(true);
 		}
 
-		while (true) {
-			try {
-				server.call();
-			} catch (Exception e) {
-				e.printStackTrace();
+		server.setRangeCache(new RangeCache());
+		Metrics.registerMBean();
+		BigMath.setPrimeSource(PrimeSource.fromSystemProperties());
+
+		if (threads > 1) {
+			server.listen(
+					ThreadPools.newPerTaskExecutor(PrimeFactorsServer.class.getSimpleName()),
+					newComputePool(threads, threads * CONST_QUEUED_CLIENTS_PER_THREAD)
+			);
+		} else {
+			server.setForkJoinPool(ForkJoinPool.commonPool());
+
+			while (true) {
+				try {
+					server.call();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serves a single connection accepted by {@link PrimeFactorsServer#listen(ExecutorService)}.
+	 */
+	private class ConnectionHandler implements Runnable {
+
+		private final Socket client;
+		private final ExecutorService compute;
+
+		/**
+		 * @param compute pool the requests of client are factored in, or null for the thread serving client.
+		 */
+		ConnectionHandler (Socket client, ExecutorService compute) {
+			this.client = client;
+			this.compute = compute;
+		}
+
+		@Override
+		public void run () {
+			try (Socket client = this.client) {
+				final MessageStream stream = MessageStream.accept(client);
+
+				if (logEnabled) {
+					log(String.format(LOG_NEXT_CLIENT, client));
+				}
+
+				final Conversation conversation = new Conversation(stream);
+
+				while (serve(conversation, compute) != null) {
+					//Answer the client until it closes the connection
+				}
+
+				stream.close();
+			} catch (IOException e) {
+				if (logEnabled) {
+					log(e.toString());
+				}
+			}
+
+			if (logEnabled) {
+				log(LOG_CLOSE_CLIENT);
 			}
 		}
+
+	}
+
+	/**
+	 * A connection being served, along with the messages read from it ahead of time while checking whether the
+	 * request in progress was cancelled.
+	 */
+	private static class Conversation {
+
+		private final MessageStream stream;
+		private final Queue<ClientToServerMessage> readAhead = new LinkedList<>();
+
+		Conversation (MessageStream stream) {
+			this.stream = stream;
+		}
+
+		ClientToServerMessage read () throws IOException, ClassNotFoundException {
+			if (!readAhead.isEmpty()) {
+				return readAhead.remove();
+			}
+
+			return (ClientToServerMessage) stream.readMessage();
+		}
+
+		/**
+		 * @return a BooleanSupplier returning true once the client has sent a CancelMessage for the request id, or
+		 * can no longer be answered. Other messages received meanwhile are kept for {@link Conversation#read()},
+		 * except for the requests they cancel, which are dropped without being answered.
+		 */
+		BooleanSupplier cancellation (final long id) {
+			return new BooleanSupplier() {
+
+				private boolean cancelled;
+
+				@Override
+				public boolean getAsBoolean () {
+					ClientToServerMessage message;
+
+					try {
+						while (!cancelled && stream.isReadable()) {
+							message = (ClientToServerMessage) stream.readMessage();
+
+							if (message instanceof ClientToServerMessage.CancelMessage) {
+								final long cancelledId = ((ClientToServerMessage.CancelMessage) message).getId();
+
+								//A pipelining client can also cancel requests waiting behind this one
+								cancelled = cancelledId == id;
+								readAhead.removeIf(
+										queued -> queued instanceof FactorMessage && ((FactorMessage) queued).getId() == cancelledId
+								);
+							} else {
+								readAhead.add(message);
+							}
+						}
+					} catch (ClassNotFoundException e) {
+						//Not a message this server understands, there is nothing to answer it with in the middle of a reply
+					} catch (IOException e) {
+						cancelled = true; //The connection is broken, nobody is left to read the result
+					}
+
+					return cancelled;
+				}
+
+			};
+		}
+
 	}
 
 }
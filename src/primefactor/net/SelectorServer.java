@@ -0,0 +1,395 @@
+package primefactor.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A non-blocking counterpart of {@link BaseServer}, to be subclassed by servers which have to keep many connections
+ * open at once.<br>
+ * Connections are multiplexed over a few selector threads, none of which ever blocks on a single client: work which
+ * may take long, such as factoring, must be handed to {@link SelectorServer#getComputePool()}, and its results sent
+ * back with {@link Connection#write(ByteBuffer)}, which can be called from any thread. That pool must thus neither
+ * block nor run tasks in the submitting thread when saturated: subclasses hold back clients sending too much work with
+ * {@link Connection#pauseReading()} instead.
+ */
+public abstract class SelectorServer implements Closeable {
+
+	public static final int CONST_READ_BUFFER_BYTES = 8 * 1024;
+
+	private final ServerSocketChannel connection;
+	private final SelectorLoop[] loops;
+	private final ExecutorService computePool;
+
+	protected boolean logEnabled;
+
+	private int nextLoop;
+
+	/**
+	 * @param port port to listen at, or 0 for any free port.
+	 * @param selectorThreads number of threads connections are multiplexed over.
+	 * @param computePool pool subclasses should run their long computations in, whose submissions never block nor run
+	 *                    on the caller, such as {@link java.util.concurrent.Executors#newFixedThreadPool(int)}.
+	 */
+	public SelectorServer (int port, int selectorThreads, ExecutorService computePool, boolean logEnabled) throws IOException {
+		if (selectorThreads <= 0) {
+			throw new IllegalArgumentException("selectorThreads parameter must be greater than 0");
+		}
+
+		this.connection = ServerSocketChannel.open();
+		this.connection.bind(new InetSocketAddress(port));
+		this.connection.configureBlocking(false);
+		this.loops = new SelectorLoop[selectorThreads];
+		this.computePool = computePool;
+		this.logEnabled = logEnabled;
+
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new SelectorLoop(Selector.open());
+		}
+
+		connection.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+
+		if (logEnabled) {
+			log(String.format("%s %d", BaseServer.LOG_CONSTRUCTOR, getPort()));
+		}
+	}
+
+	/**
+	 * Starts the selector threads, then returns immediately.
+	 */
+	public void start () {
+		for (int i = 0; i < loops.length; i++) {
+			final Thread thread = new Thread(loops[i], String.format("%s-%d", getClass().getSimpleName(), i));
+
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	public int getPort () throws IOException {
+		return ((InetSocketAddress) connection.getLocalAddress()).getPort();
+	}
+
+	public ExecutorService getComputePool () {
+		return computePool;
+	}
+
+	public void setLogEnabled (boolean enabled) {
+		logEnabled = enabled;
+	}
+
+	public boolean isLogEnabled () {
+		return logEnabled;
+	}
+
+	/**
+	 * Invoked as a callback method when a connection with a new client has been established, on the selector thread
+	 * the connection is assigned to.<br>
+	 * This method can be used to attach per connection state with {@link Connection#setAttachment(Object)}.
+	 */
+	protected abstract void onNextClient (Connection client) throws IOException;
+
+	/**
+	 * Invoked on the selector thread of client when new bytes were read from it.
+	 * @param data bytes read and not consumed yet, ready to be read. Bytes this method leaves in data are passed again
+	 *             to it, followed by new ones, when more are read.
+	 */
+	protected abstract void onRead (Connection client, ByteBuffer data) throws IOException;
+
+	/**
+	 * Called right <i>before</i> the connection with a client is closed.
+	 */
+	protected abstract void onCloseClient (Connection client) throws IOException;
+
+	@Override
+	public void close () throws IOException {
+		connection.close();
+
+		for (SelectorLoop loop: loops) {
+			for (SelectionKey key: loop.selector.keys()) {
+				if (key.attachment() instanceof Connection) {
+					((Connection) key.attachment()).close();
+				}
+			}
+			loop.selector.close();
+		}
+
+		if (logEnabled) {
+			log(BaseServer.LOG_CLOSE);
+		}
+	}
+
+	protected final void log (String output) {
+		System.out.format(
+				"[%s] %s\n", new Date(System.currentTimeMillis()), String.valueOf(output)
+		);
+	}
+
+	private void accept () throws IOException {
+		final SocketChannel channel = connection.accept();
+		final SelectorLoop loop;
+
+		if (channel == null) {
+			return;
+		}
+
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+
+		loop = loops[nextLoop];
+		nextLoop = (nextLoop + 1) % loops.length;
+
+		loop.pending.add(channel);
+		loop.selector.wakeup();
+	}
+
+	/**
+	 * A selector and the thread running it.
+	 */
+	private class SelectorLoop implements Runnable {
+
+		private final Selector selector;
+		/**
+		 * Channels accepted by the first loop and assigned to this one, waiting to be registered.
+		 */
+		private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+		/**
+		 * Connections which have bytes to write, waiting for OP_WRITE to be set.
+		 */
+		private final Queue<Connection> writable = new ConcurrentLinkedQueue<>();
+		/**
+		 * Connections whose reading was paused or resumed, waiting for OP_READ to be updated.
+		 */
+		private final Queue<Connection> readable = new ConcurrentLinkedQueue<>();
+
+		SelectorLoop (Selector selector) {
+			this.selector = selector;
+		}
+
+		@Override
+		public void run () {
+			try {
+				while (selector.isOpen()) {
+					selector.select();
+					registerPending();
+
+					final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+					while (keys.hasNext()) {
+						final SelectionKey key = keys.next();
+
+						keys.remove();
+						handle(key);
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				//The server was closed
+			} catch (IOException e) {
+				if (logEnabled) {
+					log(e.toString());
+				}
+			}
+		}
+
+		private void registerPending () throws IOException {
+			SocketChannel channel;
+			Connection client;
+
+			while ((channel = pending.poll()) != null) {
+				client = new Connection(channel, this);
+				client.key = channel.register(selector, SelectionKey.OP_READ, client);
+				onNextClient(client);
+
+				if (logEnabled) {
+					log(String.format(BaseServer.LOG_NEXT_CLIENT, channel.socket()));
+				}
+			}
+
+			while ((client = writable.poll()) != null) {
+				if (client.key.isValid()) {
+					client.key.interestOps(client.key.interestOps() | SelectionKey.OP_WRITE);
+				}
+			}
+
+			while ((client = readable.poll()) != null) {
+				if (client.key.isValid()) {
+					client.key.interestOps(
+							client.paused ?
+									client.key.interestOps() & ~SelectionKey.OP_READ :
+									client.key.interestOps() | SelectionKey.OP_READ
+					);
+				}
+			}
+		}
+
+		private void handle (SelectionKey key) {
+			final Connection client = key.attachment() instanceof Connection ? (Connection) key.attachment() : null;
+
+			try {
+				if (key.isValid() && key.isAcceptable()) {
+					accept();
+				}
+				if (client != null && key.isValid() && key.isReadable() && !client.paused) {
+					client.read();
+				}
+				if (client != null && key.isValid() && key.isWritable()) {
+					client.flush();
+				}
+			} catch (IOException e) {
+				if (client != null) {
+					client.close();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A client connected to a SelectorServer.
+	 */
+	public class Connection {
+
+		private final SocketChannel channel;
+		private final SelectorLoop loop;
+		private final Queue<ByteBuffer> writes = new ConcurrentLinkedQueue<>();
+
+		private SelectionKey key;
+		private ByteBuffer readBuffer = ByteBuffer.allocate(CONST_READ_BUFFER_BYTES);
+		private volatile Object attachment;
+		private volatile boolean paused;
+
+		private Connection (SocketChannel channel, SelectorLoop loop) {
+			this.channel = channel;
+			this.loop = loop;
+		}
+
+		public Object getAttachment () {
+			return attachment;
+		}
+
+		public void setAttachment (Object attachment) {
+			this.attachment = attachment;
+		}
+
+		public boolean isOpen () {
+			return channel.isOpen();
+		}
+
+		/**
+		 * Queues data to be sent to the client. This method can be called from any thread.
+		 */
+		public void write (ByteBuffer data) {
+			writes.add(data);
+			loop.writable.add(this);
+			loop.selector.wakeup();
+		}
+
+		/**
+		 * Stops reading from the client until {@link Connection#resumeReading()} is called, so that a client sending
+		 * requests faster than they are served is held back by TCP flow control. Bytes already read are still passed
+		 * to {@link SelectorServer#onRead(Connection, ByteBuffer)}. This method can be called from any thread.
+		 */
+		public void pauseReading () {
+			setPaused(true);
+		}
+
+		/**
+		 * Reads from the client again after {@link Connection#pauseReading()}. This method can be called from any
+		 * thread.
+		 */
+		public void resumeReading () {
+			setPaused(false);
+		}
+
+		public boolean isReadingPaused () {
+			return paused;
+		}
+
+		/**
+		 * Closes the connection with the client, after calling {@link SelectorServer#onCloseClient(Connection)}.
+		 */
+		public void close () {
+			if (!channel.isOpen()) {
+				return;
+			}
+
+			try {
+				onCloseClient(this);
+			} catch (IOException e) {
+				if (logEnabled) {
+					log(e.toString());
+				}
+			}
+
+			try {
+				channel.close();
+			} catch (IOException e) {
+				//Nothing else can be done
+			}
+
+			if (logEnabled) {
+				log(BaseServer.LOG_CLOSE_CLIENT);
+			}
+		}
+
+		private void setPaused (boolean paused) {
+			this.paused = paused;
+			loop.readable.add(this);
+			loop.selector.wakeup();
+		}
+
+		private void read () throws IOException {
+			if (!readBuffer.hasRemaining()) {
+				//onRead is waiting for more bytes than the buffer can hold
+				final ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+
+				readBuffer.flip();
+				larger.put(readBuffer);
+				readBuffer = larger;
+			}
+
+			if (channel.read(readBuffer) < 0) {
+				close();
+				return;
+			}
+
+			readBuffer.flip();
+			onRead(this, readBuffer);
+			readBuffer.compact();
+		}
+
+		private void flush () throws IOException {
+			ByteBuffer data;
+
+			while ((data = writes.peek()) != null) {
+				channel.write(data);
+
+				if (data.hasRemaining()) {
+					return; //The socket buffer is full, wait for the next OP_WRITE
+				}
+
+				writes.poll();
+			}
+
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+			//A write queued after the loop above ended would have its wake up lost otherwise
+			if (!writes.isEmpty()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			}
+		}
+
+	}
+
+}
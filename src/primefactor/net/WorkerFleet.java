@@ -0,0 +1,128 @@
+package primefactor.net;
+
+import primefactor.net.message.ServerToClientMessage.SpawnMessage;
+import primefactor.util.RangeCache;
+import primefactor.util.ThreadPools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * A fixed size set of long lived {@link PrimeFactorsServer}s, each of them serving its clients concurrently, a thread
+ * per connection, and factoring their requests on a compute pool shared by the whole fleet.<br>
+ * Endpoints are handed out round robin among the workers which are still listening: a worker whose listening loop
+ * terminated, or whose socket was closed, is replaced by a new one before being handed out again.<br>
+ * Workers share a single {@link RangeCache}, so that a range retried on another worker is not factored again.
+ */
+public class WorkerFleet implements Closeable {
+
+	private final PrimeFactorsServer[] workers;
+	private final Future<?>[] listeners;
+
+	/**
+	 * Runs the listening loops of the workers, and serves the connections they accept.
+	 */
+	private final ExecutorService ioPool;
+	private final ThreadPoolExecutor computePool;
+	private final RangeCache rangeCache = new RangeCache();
+
+	private final int basePort;
+	private final boolean logEnabled;
+
+	private int next;
+	private int respawns;
+
+	/**
+	 * @param size number of worker servers.
+	 * @param basePort first port workers try to bind to, see {@link MasterServer#primeFactorsServerFactory(int, boolean)}.
+	 * @param threads number of requests the fleet as a whole factors at the same time.
+	 */
+	public WorkerFleet (int size, int basePort, int threads, boolean logEnabled) throws IOException {
+		if (size <= 0 || threads <= 0) {
+			throw new IllegalArgumentException("size and threads parameters must be greater than 0");
+		}
+
+		this.workers = new PrimeFactorsServer[size];
+		this.listeners = new Future<?>[size];
+		this.ioPool = ThreadPools.newPerTaskExecutor(WorkerFleet.class.getSimpleName());
+		this.computePool = PrimeFactorsServer.newComputePool(
+				threads, threads * PrimeFactorsServer.CONST_QUEUED_CLIENTS_PER_THREAD
+		);
+		this.basePort = basePort;
+		this.logEnabled = logEnabled;
+
+		for (int i = 0; i < size; i++) {
+			spawn(i);
+		}
+	}
+
+	/**
+	 * @return the endpoint of the next healthy worker, in round robin order.
+	 */
+	public synchronized SpawnMessage nextEndpoint () throws IOException {
+		final int worker = next;
+
+		next = (next + 1) % workers.length;
+
+		if (!isHealthy(worker)) {
+			workers[worker].close();
+			respawns++;
+			spawn(worker);
+		}
+
+		return new SpawnMessage(
+				workers[worker].connection.getInetAddress(),
+				workers[worker].getPort()
+		);
+	}
+
+	public int size () {
+		return workers.length;
+	}
+
+	/**
+	 * @return the number of workers replaced since the fleet was created.
+	 */
+	public synchronized int getRespawns () {
+		return respawns;
+	}
+
+	public RangeCache getRangeCache () {
+		return rangeCache;
+	}
+
+	private boolean isHealthy (int worker) {
+		return !listeners[worker].isDone() && !workers[worker].connection.isClosed();
+	}
+
+	private void spawn (int worker) throws IOException {
+		final PrimeFactorsServer server = MasterServer.primeFactorsServerFactory(basePort, logEnabled);
+
+		if (server == null) {
+			throw new IOException(
+					String.format("No free port in [%d, %d)", basePort, basePort + MasterServer.CONST_MAX_PORT_TRIES)
+			);
+		}
+
+		server.setRangeCache(rangeCache);
+		workers[worker] = server;
+		listeners[worker] = ioPool.submit(() -> {
+			server.listen(ioPool, computePool);
+			return null;
+		});
+	}
+
+	@Override
+	public synchronized void close () throws IOException {
+		for (PrimeFactorsServer worker: workers) {
+			worker.close();
+		}
+
+		ioPool.shutdown();
+		computePool.shutdown();
+	}
+
+}
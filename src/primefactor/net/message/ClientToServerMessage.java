@@ -1,5 +1,7 @@
 package primefactor.net.message;
 
+import primefactor.util.FactoringAlgorithm;
+
 import java.math.BigInteger;
 import java.util.LinkedList;
 import java.util.List;
@@ -9,6 +11,8 @@ import java.util.List;
  */
 public abstract class ClientToServerMessage extends Message {
 
+	public static final String CONST_PROT_CANCEL = "cancel";
+
 	public static class FactorMessage extends ClientToServerMessage {
 
 		public static final BigInteger CONST_MIN_N = BigInteger.valueOf(2);
@@ -19,11 +23,31 @@ public abstract class ClientToServerMessage extends Message {
 
 		private BigInteger n;
 		private BigInteger low, high;
+		private FactoringAlgorithm.Type algorithm;
+		private long seed;
+		private long id;
 
 		public FactorMessage (BigInteger n, BigInteger low, BigInteger high) {
+			this(n, low, high, FactoringAlgorithm.Type.TRIAL_DIVISION, 0);
+		}
+
+		public FactorMessage (BigInteger n, BigInteger low, BigInteger high, FactoringAlgorithm.Type algorithm, long seed) {
+			this(n, low, high, algorithm, seed, 0);
+		}
+
+		/**
+		 * @param algorithm algorithm the server should factor n with. Algorithms which are not range based ignore
+		 *                  low and high.
+		 * @param seed seed for the pseudo random choices of algorithm.
+		 * @param id identifier the client can later cancel this request with, see {@link CancelMessage}.
+		 */
+		public FactorMessage (BigInteger n, BigInteger low, BigInteger high, FactoringAlgorithm.Type algorithm, long seed, long id) {
 			this.n = n;
 			this.low = low;
 			this.high = high;
+			this.algorithm = algorithm;
+			this.seed = seed;
+			this.id = id;
 
 			if (!isValid()) {
 				throw new IllegalArgumentException(
@@ -55,6 +79,38 @@ public abstract class ClientToServerMessage extends Message {
 			return high;
 		}
 
+		public FactoringAlgorithm.Type getAlgorithm () {
+			return algorithm;
+		}
+
+		public long getSeed () {
+			return seed;
+		}
+
+		public long getId () {
+			return id;
+		}
+
+		/**
+		 * Utility method to run a non range based algorithm on multiple servers at once: each copy of the current
+		 * instance differs from the others by its seed only, so that each server follows a different random path.
+		 * @param slots number of copies to make.
+		 * @return a list of slots FactorMessage instances, with seeds seed, seed + 1, ..., seed + slots - 1.
+		 */
+		public List<FactorMessage> replicate (int slots) {
+			final LinkedList<FactorMessage> result = new LinkedList<>();
+
+			if (slots <= 0) {
+				throw new IllegalArgumentException("slots parameter must be greater than 0");
+			}
+
+			for (int i = 0; i < slots; i++) {
+				result.add(new FactorMessage(n, low, high, algorithm, seed + i, id));
+			}
+
+			return result;
+		}
+
 		/**
 		 * A variant of partition(int slots) automating the choice of the slots parameter.
 		 * @return return value of partition(int slots).
@@ -101,7 +157,7 @@ public abstract class ClientToServerMessage extends Message {
 					}
 
 					result.add(
-							new FactorMessage(this.n, low, high)
+							new FactorMessage(this.n, low, high, algorithm, seed, id)
 					);
 
 					low = high.add(BigInteger.ONE);
@@ -123,14 +179,46 @@ public abstract class ClientToServerMessage extends Message {
 					.append(low)
 					.append(CONST_PROT_SPACE)
 					.append(high)
-					.append(CONST_PROT_NEWLINE)
 			;
 
+			if (algorithm != FactoringAlgorithm.Type.TRIAL_DIVISION) {
+				b.append(CONST_PROT_SPACE)
+						.append(algorithm.getName())
+						.append(CONST_PROT_SPACE)
+						.append(seed);
+			}
+
+			b.append(CONST_PROT_NEWLINE);
+
 			return b.toString();
 		}
 
 	}
 
+	/**
+	 * Asks a PrimeFactorsServer to stop working on the FactorMessage with the given id, sent earlier over the same
+	 * connection. The server then answers that FactorMessage as usual, with the prime factors found until then.
+	 * Cancelling a request which was already answered has no effect.
+	 */
+	public static class CancelMessage extends ClientToServerMessage {
+
+		private long id;
+
+		public CancelMessage (long id) {
+			this.id = id;
+		}
+
+		public long getId () {
+			return id;
+		}
+
+		@Override
+		public String toString () {
+			return CONST_PROT_CANCEL + CONST_PROT_SPACE + id + CONST_PROT_NEWLINE;
+		}
+
+	}
+
 	public static class SpawnMessage extends ClientToServerMessage {
 
 		private int serversNumber;
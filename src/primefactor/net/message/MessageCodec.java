@@ -0,0 +1,195 @@
+package primefactor.net.message;
+
+import primefactor.util.FactoringAlgorithm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+
+/**
+ * Compact binary encoding of the messages exchanged between a MasterClient and a PrimeFactorsServer, as an
+ * alternative to Java serialization.<br>
+ * A message is encoded as a one byte tag identifying its type, followed by its fields. A BigInteger field is encoded
+ * as the length of its two's-complement representation, followed by the representation itself. Framing, that is
+ * prefixing each encoded message with its length, is left to the transport.
+ */
+public final class MessageCodec {
+
+	/**
+	 * Sent by a client right after connecting to ask for the binary protocol, and echoed back by the server to
+	 * accept it. Its first byte differs from that of the Java serialization stream header, so that both protocols
+	 * can be told apart.
+	 */
+	public static final int CONST_MAGIC = 0x50464231; //"PFB1"
+	/**
+	 * Largest encoded message accepted, in bytes.
+	 */
+	public static final int CONST_MAX_MESSAGE_BYTES = 1 << 24;
+
+	public static final byte CONST_TAG_FACTOR = 1;
+	public static final byte CONST_TAG_FOUND = 2;
+	public static final byte CONST_TAG_DONE = 3;
+	public static final byte CONST_TAG_INVALID = 4;
+	public static final byte CONST_TAG_BATCH = 5;
+	public static final byte CONST_TAG_CANCEL = 6;
+
+	private MessageCodec () {
+	}
+
+	/**
+	 * @throws IllegalArgumentException if message is of a type the binary protocol does not carry.
+	 */
+	public static void encode (Message message, DataOutput out) throws IOException {
+		if (message instanceof ClientToServerMessage.FactorMessage) {
+			final ClientToServerMessage.FactorMessage factor = (ClientToServerMessage.FactorMessage) message;
+
+			out.writeByte(CONST_TAG_FACTOR);
+			writeBigInteger(factor.getN(), out);
+			writeBigInteger(factor.getLowBound(), out);
+			writeBigInteger(factor.getHighBound(), out);
+			out.writeByte(factor.getAlgorithm().ordinal());
+			out.writeLong(factor.getSeed());
+			out.writeLong(factor.getId());
+		} else if (message instanceof ClientToServerMessage.CancelMessage) {
+			out.writeByte(CONST_TAG_CANCEL);
+			out.writeLong(((ClientToServerMessage.CancelMessage) message).getId());
+		} else if (message instanceof ServerToClientMessage.FoundMessage) {
+			final ServerToClientMessage.FoundMessage found = (ServerToClientMessage.FoundMessage) message;
+
+			out.writeByte(CONST_TAG_FOUND);
+			writeBigInteger(found.getN(), out);
+			writeBigInteger(found.getFactor(), out);
+		} else if (message instanceof ServerToClientMessage.BatchMessage) {
+			final ServerToClientMessage.BatchMessage batch = (ServerToClientMessage.BatchMessage) message;
+
+			out.writeByte(CONST_TAG_BATCH);
+			writeBigInteger(batch.getN(), out);
+			out.writeLong(batch.getId());
+			out.writeInt(batch.size());
+
+			for (int i = 0; i < batch.size(); i++) {
+				writeBigInteger(batch.getPrimes().get(i), out);
+				out.writeInt(batch.getExponents().get(i));
+			}
+		} else if (message instanceof ServerToClientMessage.DoneMessage) {
+			final ServerToClientMessage.DoneMessage done = (ServerToClientMessage.DoneMessage) message;
+
+			out.writeByte(CONST_TAG_DONE);
+			writeBigInteger(done.getN(), out);
+			writeBigInteger(done.getLowBound(), out);
+			writeBigInteger(done.getHighBound(), out);
+			writeBigInteger(done.getCofactor(), out);
+			out.writeBoolean(done.isFactored());
+			out.writeLong(done.getId());
+		} else if (message instanceof ServerToClientMessage.InvalidMessage) {
+			out.writeByte(CONST_TAG_INVALID);
+		} else {
+			throw new IllegalArgumentException(
+					String.format("%s is not supported by the binary protocol", message.getClass().getSimpleName())
+			);
+		}
+	}
+
+	/**
+	 * @throws ClassNotFoundException if the tag read does not identify any message type.
+	 * @throws StreamCorruptedException if the fields read do not make up a valid message.
+	 */
+	public static Message decode (DataInput in) throws IOException, ClassNotFoundException {
+		final byte tag = in.readByte();
+
+		try {
+			switch (tag) {
+				case CONST_TAG_FACTOR:
+					return new ClientToServerMessage.FactorMessage(
+							readBigInteger(in),
+							readBigInteger(in),
+							readBigInteger(in),
+							readAlgorithm(in),
+							in.readLong(),
+							in.readLong()
+					);
+				case CONST_TAG_CANCEL:
+					return new ClientToServerMessage.CancelMessage(in.readLong());
+				case CONST_TAG_FOUND:
+					return new ServerToClientMessage.FoundMessage(readBigInteger(in), readBigInteger(in));
+				case CONST_TAG_BATCH:
+					return readBatch(in);
+				case CONST_TAG_DONE:
+					return new ServerToClientMessage.DoneMessage(
+							readBigInteger(in),
+							readBigInteger(in),
+							readBigInteger(in),
+							readBigInteger(in),
+							in.readBoolean(),
+							in.readLong()
+					);
+				case CONST_TAG_INVALID:
+					return new ServerToClientMessage.InvalidMessage();
+				default:
+					throw new ClassNotFoundException(String.format("No message type has tag %d", tag));
+			}
+		} catch (IllegalArgumentException e) {
+			throw new StreamCorruptedException(e.getMessage());
+		}
+	}
+
+	private static ServerToClientMessage.BatchMessage readBatch (DataInput in) throws IOException {
+		final ServerToClientMessage.BatchMessage result = new ServerToClientMessage.BatchMessage(
+				readBigInteger(in), in.readLong()
+		);
+		final int size = in.readInt();
+		int exponent;
+
+		if (size < 0 || size > CONST_MAX_MESSAGE_BYTES) {
+			throw new StreamCorruptedException(String.format("Invalid batch size %d", size));
+		}
+
+		for (int i = 0; i < size; i++) {
+			final BigInteger prime = readBigInteger(in);
+
+			exponent = in.readInt();
+
+			if (exponent <= 0) {
+				throw new StreamCorruptedException(String.format("Invalid exponent %d", exponent));
+			}
+
+			result.addFactor(prime, exponent);
+		}
+
+		return result;
+	}
+
+	private static void writeBigInteger (BigInteger value, DataOutput out) throws IOException {
+		final byte[] bytes = value.toByteArray();
+
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static BigInteger readBigInteger (DataInput in) throws IOException {
+		final int length = in.readInt();
+		final byte[] bytes;
+
+		if (length <= 0 || length > CONST_MAX_MESSAGE_BYTES) {
+			throw new StreamCorruptedException(String.format("Invalid BigInteger length %d", length));
+		}
+
+		bytes = new byte[length];
+		in.readFully(bytes);
+
+		return new BigInteger(bytes);
+	}
+
+	private static FactoringAlgorithm.Type readAlgorithm (DataInput in) throws IOException {
+		final int ordinal = in.readUnsignedByte();
+
+		if (ordinal >= FactoringAlgorithm.Type.values().length) {
+			throw new StreamCorruptedException(String.format("Unknown algorithm %d", ordinal));
+		}
+
+		return FactoringAlgorithm.Type.values()[ordinal];
+	}
+
+}
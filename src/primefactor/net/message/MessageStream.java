@@ -0,0 +1,360 @@
+package primefactor.net.message;
+
+import primefactor.util.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A two-way stream of {@link Message}s over a socket, speaking either Java serialization or the binary protocol of
+ * {@link MessageCodec}.<br>
+ * The protocol is chosen by the client: a client wishing to use the binary protocol sends
+ * {@link MessageCodec#CONST_MAGIC} as soon as it connects, which the server echoes back. Any other opening bytes are
+ * taken as the header of a Java serialization stream.<br>
+ * The messages and bytes each stream reads and writes are counted, in total as well as per connection.
+ */
+public abstract class MessageStream implements Closeable {
+
+	private static final LongAdder messagesIn = Metrics.counter("stream.messages.in");
+	private static final LongAdder messagesOut = Metrics.counter("stream.messages.out");
+	private static final LongAdder bytesIn = Metrics.counter("stream.bytes.in");
+	private static final LongAdder bytesOut = Metrics.counter("stream.bytes.out");
+	/**
+	 * Messages and bytes exchanged by each connection, read and written, recorded once it is closed.
+	 */
+	private static final Metrics.Histogram connectionMessages = Metrics.histogram("connection.messages");
+	private static final Metrics.Histogram connectionBytes = Metrics.histogram("connection.bytes");
+
+	private CountingInputStream countingIn;
+	private CountingOutputStream countingOut;
+	private volatile long messagesRead, messagesWritten;
+	private final AtomicBoolean recorded = new AtomicBoolean();
+
+	public abstract Message readMessage () throws IOException, ClassNotFoundException;
+
+	/**
+	 * Can be called by a thread while another one is reading from this stream, or writing to it.
+	 */
+	public abstract void writeMessage (Message message) throws IOException;
+
+	/**
+	 * @return true if some bytes of a message have been received and not read yet, in which case
+	 * {@link MessageStream#readMessage()} does not block for longer than the rest of the message takes to arrive.
+	 */
+	public abstract boolean isReadable () throws IOException;
+
+	public long getMessagesRead () {
+		return messagesRead;
+	}
+
+	public long getMessagesWritten () {
+		return messagesWritten;
+	}
+
+	/**
+	 * @return the number of bytes read from the socket, protocol negotiation included.
+	 */
+	public long getBytesRead () {
+		return countingIn == null ? 0 : countingIn.count;
+	}
+
+	/**
+	 * @return the number of bytes written to the socket, protocol negotiation included.
+	 */
+	public long getBytesWritten () {
+		return countingOut == null ? 0 : countingOut.count;
+	}
+
+	/**
+	 * To be called by the reading thread once a message was read.
+	 */
+	protected void onRead () {
+		messagesRead++;
+		messagesIn.increment();
+	}
+
+	/**
+	 * To be called once a message was written, with the lock of this stream held.
+	 */
+	protected void onWrite () {
+		messagesWritten++;
+		messagesOut.increment();
+	}
+
+	/**
+	 * To be called when this stream is closed: records the traffic of the connection, the first time only.
+	 */
+	protected void onClose () {
+		if (recorded.compareAndSet(false, true)) {
+			connectionMessages.record(messagesRead + messagesWritten);
+			connectionBytes.record(getBytesRead() + getBytesWritten());
+		}
+	}
+
+	MessageStream counting (CountingInputStream in, CountingOutputStream out) {
+		this.countingIn = in;
+		this.countingOut = out;
+
+		return this;
+	}
+
+	/**
+	 * Server side of the protocol negotiation.
+	 * @param socket socket of a client which just connected.
+	 * @return a MessageStream speaking the protocol the client opened with.
+	 */
+	public static MessageStream accept (Socket socket) throws IOException {
+		final CountingInputStream countingIn = new CountingInputStream(socket.getInputStream());
+		final CountingOutputStream countingOut = new CountingOutputStream(socket.getOutputStream());
+		final BufferedInputStream in = new BufferedInputStream(countingIn);
+		final OutputStream out = new BufferedOutputStream(countingOut);
+		final DataOutputStream dataOut;
+
+		in.mark(Integer.BYTES);
+
+		if (new DataInputStream(in).readInt() == MessageCodec.CONST_MAGIC) {
+			dataOut = new DataOutputStream(out);
+			dataOut.writeInt(MessageCodec.CONST_MAGIC);
+			dataOut.flush();
+
+			return new BinaryMessageStream(in, dataOut).counting(countingIn, countingOut);
+		}
+
+		in.reset();
+
+		return new ObjectMessageStream(in, out).counting(countingIn, countingOut);
+	}
+
+	/**
+	 * Client side of the protocol negotiation.
+	 * @param socket socket connected to a server.
+	 * @param binary true to use the binary protocol, false to use Java serialization.
+	 */
+	public static MessageStream connect (Socket socket, boolean binary) throws IOException {
+		final CountingInputStream countingIn = new CountingInputStream(socket.getInputStream());
+		final CountingOutputStream countingOut = new CountingOutputStream(socket.getOutputStream());
+		final InputStream in = new BufferedInputStream(countingIn);
+		final OutputStream out = new BufferedOutputStream(countingOut);
+		final DataOutputStream dataOut;
+
+		if (binary) {
+			dataOut = new DataOutputStream(out);
+			dataOut.writeInt(MessageCodec.CONST_MAGIC);
+			dataOut.flush();
+
+			if (new DataInputStream(in).readInt() != MessageCodec.CONST_MAGIC) {
+				throw new StreamCorruptedException("The server did not accept the binary protocol");
+			}
+
+			return new BinaryMessageStream(in, dataOut).counting(countingIn, countingOut);
+		}
+
+		return new ObjectMessageStream(in, out).counting(countingIn, countingOut);
+	}
+
+	public static class ObjectMessageStream extends MessageStream {
+
+		private final InputStream rawIn;
+		private final ObjectInputStream in;
+		private final ObjectOutputStream out;
+
+		ObjectMessageStream (InputStream in, OutputStream out) throws IOException {
+			this.out = new ObjectOutputStream(out);
+			this.out.flush(); //Send the stream header, which the other end is waiting for
+			this.rawIn = in;
+			this.in = new ObjectInputStream(in);
+		}
+
+		@Override
+		public Message readMessage () throws IOException, ClassNotFoundException {
+			final Message result = (Message) in.readObject();
+
+			onRead();
+
+			return result;
+		}
+
+		@Override
+		public synchronized void writeMessage (Message message) throws IOException {
+			out.writeObject(message);
+			out.flush();
+			onWrite();
+		}
+
+		@Override
+		public boolean isReadable () throws IOException {
+			//Between two objects, ObjectInputStream holds back no bytes of rawIn
+			return rawIn.available() > 0;
+		}
+
+		@Override
+		public void close () throws IOException {
+			onClose();
+			out.close();
+			in.close();
+		}
+
+	}
+
+	/**
+	 * Frames each message encoded by {@link MessageCodec} with its length, as a four byte int.
+	 */
+	public static class BinaryMessageStream extends MessageStream {
+
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		private final DataOutputStream bufferOut = new DataOutputStream(buffer);
+
+		BinaryMessageStream (InputStream in, DataOutputStream out) {
+			this.in = new DataInputStream(in);
+			this.out = out;
+		}
+
+		@Override
+		public Message readMessage () throws IOException, ClassNotFoundException {
+			final int length = in.readInt();
+			final byte[] frame;
+
+			if (length <= 0 || length > MessageCodec.CONST_MAX_MESSAGE_BYTES) {
+				throw new StreamCorruptedException(String.format("Invalid message length %d", length));
+			}
+
+			frame = new byte[length];
+			in.readFully(frame);
+
+			final Message result = MessageCodec.decode(new DataInputStream(new ByteArrayInputStream(frame)));
+
+			onRead();
+
+			return result;
+		}
+
+		@Override
+		public synchronized void writeMessage (Message message) throws IOException {
+			buffer.reset();
+			MessageCodec.encode(message, bufferOut);
+
+			out.writeInt(buffer.size());
+			buffer.writeTo(out);
+			out.flush();
+			onWrite();
+		}
+
+		@Override
+		public boolean isReadable () throws IOException {
+			return in.available() > 0;
+		}
+
+		@Override
+		public void close () throws IOException {
+			onClose();
+			out.close();
+			in.close();
+		}
+
+	}
+
+	/**
+	 * Counts the bytes read from a socket, in total and for its connection. Only the reading thread updates the count.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private volatile long count;
+
+		CountingInputStream (InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read () throws IOException {
+			final int result = super.read();
+
+			if (result >= 0) {
+				counted(1);
+			}
+
+			return result;
+		}
+
+		@Override
+		public int read (byte[] b, int off, int len) throws IOException {
+			final int result = super.read(b, off, len);
+
+			if (result > 0) {
+				counted(result);
+			}
+
+			return result;
+		}
+
+		@Override
+		public long skip (long n) throws IOException {
+			final long result = super.skip(n);
+
+			counted(result);
+
+			return result;
+		}
+
+		@Override
+		public boolean markSupported () {
+			return false; //Bytes read again after a reset would be counted twice
+		}
+
+		private void counted (long bytes) {
+			count += bytes;
+			bytesIn.add(bytes);
+		}
+
+	}
+
+	/**
+	 * Counts the bytes written to a socket, in total and for its connection. Writes are serialized by the lock of the
+	 * stream above.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private volatile long count;
+
+		CountingOutputStream (OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write (int b) throws IOException {
+			out.write(b);
+			counted(1);
+		}
+
+		@Override
+		public void write (byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len); //Rather than FilterOutputStream's byte by byte loop
+			counted(len);
+		}
+
+		private void counted (long bytes) {
+			count += bytes;
+			bytesOut.add(bytes);
+		}
+
+	}
+
+}
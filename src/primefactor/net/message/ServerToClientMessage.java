@@ -2,6 +2,9 @@ package primefactor.net.message;
 
 import java.math.BigInteger;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Created by n0ne on 16/03/17.
@@ -11,6 +14,8 @@ public abstract class ServerToClientMessage extends Message {
 	public static final String CONST_PROT_FOUND = "found";
 	public static final String CONST_PROT_DONE = "done";
 	public static final String CONST_PROT_INVALID = "invalid";
+	public static final String CONST_PROT_BATCH = "batch";
+	public static final String CONST_PROT_POWER = "^";
 
 	public static class FoundMessage extends ServerToClientMessage {
 
@@ -46,15 +51,137 @@ public abstract class ServerToClientMessage extends Message {
 
 	}
 
+	/**
+	 * Carries several prime factors of n at once, in run-length form: each distinct prime is sent once, along with
+	 * the number of times it divides n.
+	 */
+	public static class BatchMessage extends ServerToClientMessage {
+
+		private BigInteger n;
+		private List<BigInteger> primes;
+		private List<Integer> exponents;
+		private long id;
+
+		public BatchMessage (BigInteger n) {
+			this(n, 0);
+		}
+
+		/**
+		 * @param id id of the FactorMessage answered, see {@link ClientToServerMessage.FactorMessage#getId()}.
+		 */
+		public BatchMessage (BigInteger n, long id) {
+			this.n = n;
+			this.primes = new ArrayList<>();
+			this.exponents = new ArrayList<>();
+			this.id = id;
+		}
+
+		public BigInteger getN () {
+			return n;
+		}
+
+		public long getId () {
+			return id;
+		}
+
+		public List<BigInteger> getPrimes () {
+			return primes;
+		}
+
+		public List<Integer> getExponents () {
+			return exponents;
+		}
+
+		/**
+		 * @return the number of distinct primes carried.
+		 */
+		public int size () {
+			return primes.size();
+		}
+
+		/**
+		 * @param prime prime factor of n; if equal to the last prime added, its exponent is increased instead.
+		 * @param exponent number of times prime divides n.
+		 */
+		public void addFactor (BigInteger prime, int exponent) {
+			final int last = primes.size() - 1;
+
+			if (last >= 0 && primes.get(last).equals(prime)) {
+				exponents.set(last, exponents.get(last) + exponent);
+			} else {
+				primes.add(prime);
+				exponents.add(exponent);
+			}
+		}
+
+		/**
+		 * @return the factors carried, each prime repeated as many times as its exponent.
+		 */
+		public List<BigInteger> getFactors () {
+			final List<BigInteger> result = new LinkedList<>();
+
+			for (int i = 0; i < primes.size(); i++) {
+				for (int j = 0; j < exponents.get(i); j++) {
+					result.add(primes.get(i));
+				}
+			}
+
+			return result;
+		}
+
+		@Override
+		public String toString () {
+			final StringBuilder b = new StringBuilder();
+
+			b.append(CONST_PROT_BATCH)
+					.append(CONST_PROT_SPACE)
+					.append(n);
+
+			for (int i = 0; i < primes.size(); i++) {
+				b.append(CONST_PROT_SPACE)
+						.append(primes.get(i))
+						.append(CONST_PROT_POWER)
+						.append(exponents.get(i));
+			}
+
+			b.append(CONST_PROT_NEWLINE);
+
+			return b.toString();
+		}
+
+	}
+
 	public static class DoneMessage extends ServerToClientMessage {
 
 		private BigInteger n;
 		private BigInteger low, high;
+		private BigInteger cofactor;
+		private boolean factored;
+		private long id;
 
 		public DoneMessage (BigInteger n, BigInteger low, BigInteger high) {
+			this(n, low, high, n, false);
+		}
+
+		/**
+		 * @param cofactor what is left of n once the prime factors found by the server are divided out.
+		 * @param factored true if the server proved cofactor to be 1 or prime, in which case the prime factors it
+		 *                 found, along with cofactor, make up the whole factorization of n.
+		 */
+		public DoneMessage (BigInteger n, BigInteger low, BigInteger high, BigInteger cofactor, boolean factored) {
+			this(n, low, high, cofactor, factored, 0);
+		}
+
+		/**
+		 * @param id id of the FactorMessage answered, see {@link ClientToServerMessage.FactorMessage#getId()}.
+		 */
+		public DoneMessage (BigInteger n, BigInteger low, BigInteger high, BigInteger cofactor, boolean factored, long id) {
 			this.n = n;
 			this.low = low;
 			this.high = high;
+			this.cofactor = cofactor;
+			this.factored = factored;
+			this.id = id;
 		}
 
 		public BigInteger getN () {
@@ -69,6 +196,18 @@ public abstract class ServerToClientMessage extends Message {
 			return high;
 		}
 
+		public BigInteger getCofactor () {
+			return cofactor;
+		}
+
+		public boolean isFactored () {
+			return factored;
+		}
+
+		public long getId () {
+			return id;
+		}
+
 		@Override
 		public String toString () {
 			final StringBuilder b = new StringBuilder();
@@ -80,9 +219,15 @@ public abstract class ServerToClientMessage extends Message {
 					.append(low)
 					.append(CONST_PROT_SPACE)
 					.append(high)
-					.append(CONST_PROT_NEWLINE)
 			;
 
+			if (factored) {
+				b.append(CONST_PROT_SPACE)
+						.append(cofactor);
+			}
+
+			b.append(CONST_PROT_NEWLINE);
+
 			return b.toString();
 		}
 
@@ -1,6 +1,10 @@
 package primefactor.net.message;
 
+import primefactor.util.FactoringAlgorithm;
+
 import java.math.BigInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Created by n0ne on 23/03/17.
@@ -10,15 +14,27 @@ public abstract class UserToClientMessage extends Message {
 	public static class FactorMessage {
 
 		public static final BigInteger CONST_INPUT_MIN_VALID = BigInteger.valueOf(2);
+		private static final Pattern CONST_INPUT_ALGORITHM = Pattern.compile("\\s*([a-zA-Z_]+)\\s+");
 
 		private BigInteger n;
+		private FactoringAlgorithm.Type algorithm;
 
 		/**
 		 *
 		 * @param n BigInteger to factor; must be n >= CONST_INPUT_MIN_VALID.
 		 */
 		public FactorMessage (BigInteger n) {
+			this(n, FactoringAlgorithm.Type.TRIAL_DIVISION);
+		}
+
+		/**
+		 *
+		 * @param n BigInteger to factor; must be n >= CONST_INPUT_MIN_VALID.
+		 * @param algorithm algorithm the user asked n to be factored with.
+		 */
+		public FactorMessage (BigInteger n, FactoringAlgorithm.Type algorithm) {
 			this.n = n;
+			this.algorithm = algorithm;
 
 			if (!checkRepresentation()) {
 				throw new InvalidMessageException(
@@ -35,13 +51,40 @@ public abstract class UserToClientMessage extends Message {
 			return n;
 		}
 
+		public FactoringAlgorithm.Type getAlgorithm () {
+			return algorithm;
+		}
+
+		/**
+		 * @param userInput a number, optionally preceded by the name of the algorithm to factor it with, as in
+		 *                  "rho 8051".
+		 * @return the corresponding FactorMessage, or null if userInput could not be parsed or holds a number lower
+		 * than CONST_INPUT_MIN_VALID.
+		 */
 		public static FactorMessage factorMessageFactory (String userInput) {
+			final Matcher matcher;
+			FactoringAlgorithm.Type algorithm = FactoringAlgorithm.Type.TRIAL_DIVISION;
 			BigInteger input;
 
+			if (userInput == null) {
+				return null;
+			}
+
+			matcher = CONST_INPUT_ALGORITHM.matcher(userInput);
+
+			if (matcher.lookingAt()) {
+				algorithm = FactoringAlgorithm.Type.fromName(matcher.group(1));
+				userInput = userInput.substring(matcher.end());
+
+				if (algorithm == null) {
+					return null;
+				}
+			}
+
 			try {
 				input = new BigInteger(filterUserInput(userInput));
-				return new FactorMessage(input);
-			} catch (NumberFormatException e) {
+				return new FactorMessage(input, algorithm);
+			} catch (NumberFormatException | InvalidMessageException e) {
 				return null;
 			}
 		}
@@ -5,7 +5,12 @@ import org.junit.Test;
 import primefactor.util.BigMath;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by n0ne on 13/03/17.
@@ -40,6 +45,201 @@ public class BigMathTest {
 		}
 	}
 
+	@Test
+	public void testPrimeFactorsOfRange () {
+		final BigInteger n = new BigInteger("86510592"); // 2^10 * 3^4 * 7 * 149
+		final BigInteger big = n.multiply(new BigInteger("18446744073709551629")); // times a prime above 2^64
+
+		Assert.assertEquals(
+				Arrays.asList(BigInteger.valueOf(3), BigInteger.valueOf(3), BigInteger.valueOf(3), BigInteger.valueOf(3), BigInteger.valueOf(7)),
+				BigMath.primeFactorsOf(n, BigInteger.valueOf(3), BigInteger.valueOf(148))
+		);
+		//Composite divisors of n within the range must not be reported
+		Assert.assertEquals(
+				Arrays.asList(BigInteger.valueOf(149)),
+				BigMath.primeFactorsOf(n, BigInteger.valueOf(8), BigInteger.valueOf(150))
+		);
+		//Same ranges, but with an n exceeding the primitive path
+		Assert.assertEquals(
+				BigMath.primeFactorsOf(n, BigInteger.valueOf(3), BigInteger.valueOf(148)),
+				BigMath.primeFactorsOf(big, BigInteger.valueOf(3), BigInteger.valueOf(148))
+		);
+		Assert.assertEquals(
+				BigMath.primeFactorsOf(n, BigInteger.valueOf(8), BigInteger.valueOf(150)),
+				BigMath.primeFactorsOf(big, BigInteger.valueOf(8), BigInteger.valueOf(150))
+		);
+	}
+
+	/**
+	 * Checks that ranges starting at 2 stop once the cofactor left is known to be prime, adding it when it lies in the
+	 * range: these would otherwise take far too long to scan.
+	 */
+	@Test
+	public void testPrimeFactorsOfRangeShrinking () {
+		final BigInteger two = BigInteger.valueOf(2);
+		final BigInteger huge = BigInteger.ONE.shiftLeft(100);
+		final List<BigInteger> expected = Arrays.asList(two, BigInteger.valueOf(3), BigInteger.valueOf(101));
+		final List<BigInteger> powers = new ArrayList<>(Collections.nCopies(64, two));
+
+		Assert.assertEquals(expected, BigMath.primeFactorsOf(BigInteger.valueOf(606), two, BigInteger.valueOf(200)));
+		Assert.assertEquals(expected.subList(0, 2), BigMath.primeFactorsOf(BigInteger.valueOf(606), two, BigInteger.valueOf(100)));
+		Assert.assertEquals(expected, BigMath.primeFactorsOf(BigInteger.valueOf(606), two, huge));
+
+		powers.add(BigInteger.valueOf(1000000007));
+		Assert.assertEquals(
+				powers,
+				BigMath.primeFactorsOf(BigMath.multiply(powers), two, BigInteger.valueOf(Long.MAX_VALUE >> 1))
+		);
+		Assert.assertEquals(
+				powers.subList(0, 64),
+				BigMath.primeFactorsOf(BigMath.multiply(powers), two, BigInteger.valueOf(1L << 20))
+		);
+	}
+
+	/**
+	 * Checks that a cancelled computation stops, returning the factors found until then only.
+	 */
+	@Test
+	public void testPrimeFactorsOfCancelled () {
+		final BigInteger n = new BigInteger("1048576000000000003145728"); // 2^20 * 1000000000000000003
+		final long[] checks = {0};
+		final List<BigInteger> factors;
+
+		factors = BigMath.primeFactorsOf(n, BigInteger.valueOf(2), BigMath.sqrt(n), 10, () -> ++checks[0] > 2);
+
+		Assert.assertEquals(3, checks[0]);
+		Assert.assertEquals(Collections.nCopies(20, BigInteger.valueOf(2)), factors);
+	}
+
+	/**
+	 * Checks that splitting a range across a ForkJoinPool finds the same factors as searching it in a single thread,
+	 * factors lying in different parts of the range included.
+	 */
+	@Test
+	public void testPrimeFactorsOfForkJoin () {
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		final Random random = new Random(0);
+		final BigInteger n = new BigInteger("3").pow(3)
+				.multiply(new BigInteger("1000003"))
+				.multiply(new BigInteger("1999993"))
+				.multiply(new BigInteger("18446744073709551629"));
+		BigInteger m;
+
+		try {
+			Assert.assertEquals(
+					Arrays.asList(BigInteger.valueOf(1000003), BigInteger.valueOf(1999993)),
+					BigMath.primeFactorsOf(n, BigInteger.valueOf(5), BigInteger.valueOf(2000000), 10, () -> false, pool)
+			);
+			Assert.assertEquals(
+					BigMath.primeFactorsOf(n, BigInteger.valueOf(2), BigInteger.valueOf(2000000)),
+					BigMath.primeFactorsOf(n, BigInteger.valueOf(2), BigInteger.valueOf(2000000), 10, () -> false, pool)
+			);
+
+			for (int i = 0; i < 20; i++) {
+				m = BigInteger.valueOf(random.nextInt(1 << 20) + 2).multiply(BigInteger.valueOf(random.nextInt(1 << 20) + 2));
+
+				Assert.assertEquals(BigMath.primeFactorsOf(m), BigMath.primeFactorsOf(m, pool));
+			}
+
+			//Cancelled from the start, no part of the range is searched
+			Assert.assertEquals(
+					Collections.emptyList(),
+					BigMath.primeFactorsOf(n, BigInteger.valueOf(5), BigInteger.valueOf(2000000), 10, () -> true, pool)
+			);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Checks that the batched variant finds the same factors as the plain one on numbers long enough to be searched by
+	 * blocks, whether low is past 2 or not, and whether the divisors fit in an int or not.
+	 */
+	@Test
+	public void testPrimeFactorsOfBatched () {
+		final Random random = new Random(0);
+		final BigInteger large = BigInteger.probablePrime(1100, random).multiply(BigInteger.probablePrime(1100, random));
+		final BigInteger n = large.multiply(new BigInteger("3").pow(3))
+				.multiply(new BigInteger("1000003").pow(2))
+				.multiply(new BigInteger("1999993"));
+		final BigInteger m = large.multiply(new BigInteger("4294967311")).multiply(new BigInteger("4295000029"));
+		BigInteger smooth = BigInteger.ONE;
+		List<BigInteger> expected;
+
+		Assert.assertEquals(
+				Arrays.asList(BigInteger.valueOf(1000003), BigInteger.valueOf(1000003), BigInteger.valueOf(1999993)),
+				BigMath.primeFactorsOfBatched(n, BigInteger.valueOf(5), BigInteger.valueOf(2000000), 10, () -> false)
+		);
+		Assert.assertEquals(
+				BigMath.primeFactorsOf(n, BigInteger.valueOf(2), BigInteger.valueOf(2000000)),
+				BigMath.primeFactorsOfBatched(n, BigInteger.valueOf(2), BigInteger.valueOf(2000000), 10, () -> false)
+		);
+		Assert.assertEquals(
+				Arrays.asList(new BigInteger("4294967311"), new BigInteger("4295000029")),
+				BigMath.primeFactorsOfBatched(m, BigInteger.valueOf(1L << 32), BigInteger.valueOf((1L << 32) + 40000), 10, () -> false)
+		);
+
+		//Only small factors: the cofactor left once the search passes its square root is prime
+		while (smooth.bitLength() <= 2200) {
+			smooth = smooth.multiply(BigInteger.valueOf(random.nextInt(1 << 20) + 2));
+		}
+		expected = BigMath.primeFactorsOf(smooth, BigInteger.valueOf(2), BigInteger.valueOf(1 << 20));
+
+		Assert.assertEquals(expected, BigMath.primeFactorsOfBatched(smooth, BigInteger.valueOf(2), BigInteger.valueOf(1 << 20), 10, () -> false));
+		Assert.assertEquals(smooth, BigMath.multiply(expected));
+
+		//Cancelled from the start, no block is searched
+		Assert.assertEquals(
+				Collections.emptyList(),
+				BigMath.primeFactorsOfBatched(n, BigInteger.valueOf(5), BigInteger.valueOf(2000000), 10, () -> true)
+		);
+	}
+
+	@Test
+	public void testSqrt () {
+		final Random random = new Random(0);
+		BigInteger n, root;
+
+		Assert.assertEquals(BigInteger.ZERO, BigMath.sqrt(BigInteger.valueOf(-4)));
+		Assert.assertEquals(BigInteger.ZERO, BigMath.sqrt(BigInteger.ZERO));
+		Assert.assertEquals(BigInteger.ONE, BigMath.sqrt(BigInteger.valueOf(3)));
+
+		for (int bits = 1; bits <= 4096; bits += 37) {
+			n = new BigInteger(bits, random);
+			root = BigMath.sqrt(n);
+
+			Assert.assertTrue(root.multiply(root).compareTo(n) <= 0);
+			Assert.assertTrue(root.add(BigInteger.ONE).pow(2).compareTo(n) > 0);
+		}
+	}
+
+	/**
+	 * Checks the long variant up to Long.MAX_VALUE, around the largest square a long holds.
+	 */
+	@Test
+	public void testSqrtLong () {
+		final long root = 3037000499L;
+
+		Assert.assertEquals(0, BigMath.sqrt(0L));
+		Assert.assertEquals(1, BigMath.sqrt(3L));
+		Assert.assertEquals(root, BigMath.sqrt(Long.MAX_VALUE));
+		Assert.assertEquals(root, BigMath.sqrt(root * root));
+		Assert.assertEquals(root - 1, BigMath.sqrt(root * root - 1));
+		Assert.assertEquals(root, BigMath.sqrt(root * root + 1));
+	}
+
+	@Test
+	public void testIsPerfectSquare () {
+		final BigInteger root = new BigInteger("618970019642690137449562111");
+
+		Assert.assertTrue(BigMath.isPerfectSquare(BigInteger.ZERO));
+		Assert.assertTrue(BigMath.isPerfectSquare(BigInteger.valueOf(49)));
+		Assert.assertTrue(BigMath.isPerfectSquare(root.pow(2)));
+		Assert.assertFalse(BigMath.isPerfectSquare(root.pow(2).add(BigInteger.ONE)));
+		Assert.assertFalse(BigMath.isPerfectSquare(root.pow(2).subtract(BigInteger.ONE)));
+		Assert.assertFalse(BigMath.isPerfectSquare(BigInteger.valueOf(-1)));
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void testPrimeFactorsOfLessThanTwo () {
 		BigMath.primeFactorsOf(new BigInteger("1"), new BigInteger("4"), new BigInteger("10"));
@@ -0,0 +1,48 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.net.MasterClient.CofactorTracker;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class CofactorTrackerTest {
+
+	/**
+	 * Adds the prime factors of 2^3 * 3 * 101 * 1000003 in disorder and more than once, checking that the tracker is
+	 * complete as soon as the cofactor left is prime.
+	 */
+	@Test
+	public void testAddFactors () {
+		final BigInteger n = BigInteger.valueOf(8 * 3 * 101 * 1000003L);
+		final CofactorTracker tracker = new CofactorTracker(n, 20);
+
+		Assert.assertFalse(tracker.isComplete());
+		Assert.assertFalse(tracker.addFactors(Arrays.asList(BigInteger.valueOf(3), BigInteger.valueOf(3))));
+		Assert.assertFalse(tracker.addFactors(Arrays.asList(BigInteger.valueOf(2), BigInteger.valueOf(2))));
+		Assert.assertFalse(tracker.addFactors(Collections.singletonList(BigInteger.valueOf(5))));
+		Assert.assertFalse(tracker.getCompletion().isDone());
+		Assert.assertTrue(tracker.addFactors(Arrays.asList(BigInteger.valueOf(101), BigInteger.valueOf(2))));
+
+		Assert.assertTrue(tracker.isComplete());
+		Assert.assertTrue(tracker.getCompletion().isDone());
+		Assert.assertEquals(BigInteger.valueOf(1000003), tracker.getCofactor());
+		Assert.assertEquals(
+				Arrays.asList(BigInteger.valueOf(2), BigInteger.valueOf(2), BigInteger.valueOf(2), BigInteger.valueOf(3), BigInteger.valueOf(101)),
+				tracker.getFactors()
+		);
+
+		//Factors arriving late are ignored
+		Assert.assertTrue(tracker.addFactors(Collections.singletonList(BigInteger.valueOf(1000003))));
+		Assert.assertEquals(BigInteger.valueOf(1000003), tracker.getCofactor());
+	}
+
+	@Test
+	public void testPrime () {
+		Assert.assertTrue(new CofactorTracker(new BigInteger("618970019642690137449562111"), 20).isComplete());
+		Assert.assertFalse(new CofactorTracker(BigInteger.valueOf(4), 20).isComplete());
+	}
+
+}
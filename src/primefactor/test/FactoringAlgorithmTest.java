@@ -0,0 +1,64 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.BigMath;
+import primefactor.util.FactoringAlgorithm;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+public class FactoringAlgorithmTest {
+
+	private static final BigInteger[][] factorizations = {
+			{BigInteger.valueOf(2)},
+			{BigInteger.valueOf(2), BigInteger.valueOf(2), BigInteger.valueOf(3), BigInteger.valueOf(4099)},
+			{BigInteger.valueOf(4099), BigInteger.valueOf(4099)},
+			{BigInteger.valueOf(998244353), BigInteger.valueOf(1000000007)},
+			{BigInteger.valueOf(3), BigInteger.valueOf(3), BigInteger.valueOf(1000003), new BigInteger("618970019642690137449562111")},
+	};
+
+	@Test
+	public void testPollardRho () {
+		for (long seed = 0; seed < 3; seed++) {
+			final FactoringAlgorithm rho = FactoringAlgorithm.Type.POLLARD_RHO.newInstance(seed);
+
+			for (BigInteger[] factors: factorizations) {
+				final List<BigInteger> expected = Arrays.asList(factors);
+
+				Assert.assertEquals(expected, rho.primeFactorsOf(BigMath.multiply(expected)));
+			}
+		}
+	}
+
+	@Test
+	public void testTrialDivision () {
+		final FactoringAlgorithm trial = FactoringAlgorithm.Type.TRIAL_DIVISION.newInstance(0);
+
+		for (int i = 0; i < 3; i++) {
+			final List<BigInteger> expected = Arrays.asList(factorizations[i]);
+
+			Assert.assertEquals(expected, trial.primeFactorsOf(BigMath.multiply(expected)));
+		}
+	}
+
+	@Test
+	public void testBatchTrialDivision () {
+		final FactoringAlgorithm batch = FactoringAlgorithm.Type.BATCH_TRIAL_DIVISION.newInstance(0);
+
+		for (int i = 0; i < 3; i++) {
+			final List<BigInteger> expected = Arrays.asList(factorizations[i]);
+
+			Assert.assertEquals(expected, batch.primeFactorsOf(BigMath.multiply(expected)));
+		}
+	}
+
+	@Test
+	public void testFromName () {
+		Assert.assertEquals(FactoringAlgorithm.Type.POLLARD_RHO, FactoringAlgorithm.Type.fromName("RHO"));
+		Assert.assertEquals(FactoringAlgorithm.Type.BATCH_TRIAL_DIVISION, FactoringAlgorithm.Type.fromName("batch"));
+		Assert.assertNull(FactoringAlgorithm.Type.fromName("ecm"));
+	}
+
+}
@@ -0,0 +1,93 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.FactorizationCache;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+public class FactorizationCacheTest {
+
+	private static final BigInteger N = BigInteger.valueOf(2 * 3 * 3 * 7);
+	private static final List<BigInteger> FACTORS = Arrays.asList(
+			BigInteger.valueOf(7), BigInteger.valueOf(3), BigInteger.valueOf(2), BigInteger.valueOf(3)
+	);
+
+	@Test
+	public void testGetPut () {
+		final FactorizationCache cache = new FactorizationCache(16, 60_000);
+
+		Assert.assertNull(cache.get(N));
+		cache.put(N, FACTORS);
+		Assert.assertEquals(
+				Arrays.asList(BigInteger.valueOf(2), BigInteger.valueOf(3), BigInteger.valueOf(3), BigInteger.valueOf(7)),
+				cache.get(N)
+		);
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+	}
+
+	/**
+	 * Checks that the cache never holds more than its capacity, and that an entry used after each put outlives the
+	 * others.
+	 */
+	@Test
+	public void testEviction () {
+		final int capacity = 64;
+		final FactorizationCache cache = new FactorizationCache(capacity, 60_000);
+		final BigInteger kept = BigInteger.valueOf(2);
+
+		cache.put(kept, Arrays.asList(kept));
+
+		for (long prime = 3; prime < 5000; prime += 2) {
+			final BigInteger n = BigInteger.valueOf(prime);
+
+			if (n.isProbablePrime(20)) {
+				cache.put(n, Arrays.asList(n));
+				Assert.assertNotNull(cache.get(kept));
+				Assert.assertTrue(cache.size() <= capacity);
+			}
+		}
+
+		Assert.assertEquals(capacity, cache.size());
+	}
+
+	@Test
+	public void testExpiry () throws InterruptedException {
+		final FactorizationCache cache = new FactorizationCache(16, 1);
+
+		cache.put(N, FACTORS);
+		Thread.sleep(10);
+
+		Assert.assertNull(cache.get(N));
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testSaveLoad () throws Exception {
+		final File file = File.createTempFile(FactorizationCacheTest.class.getSimpleName(), null);
+		final FactorizationCache cache = new FactorizationCache(16, 60_000), loaded = new FactorizationCache(16, 60_000);
+		final BigInteger prime = BigInteger.valueOf(1_000_000_007L);
+
+		try {
+			cache.put(N, FACTORS);
+			cache.put(prime, Arrays.asList(prime));
+			cache.save(file);
+
+			Assert.assertEquals(2, loaded.load(file));
+			Assert.assertEquals(cache.get(N), loaded.get(N));
+			Assert.assertEquals(Arrays.asList(prime), loaded.get(prime));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityInvalid () {
+		new FactorizationCache(0, 60_000);
+	}
+
+}
@@ -2,9 +2,22 @@ package primefactor.test;
 
 import org.junit.Assert;
 import org.junit.Test;
+import primefactor.net.message.ClientToServerMessage;
 import primefactor.net.message.ClientToServerMessage.FactorMessage;
+import primefactor.net.message.Message;
+import primefactor.net.message.MessageCodec;
+import primefactor.net.message.ServerToClientMessage;
+import primefactor.net.message.UserToClientMessage;
+import primefactor.util.BigMath;
+import primefactor.util.FactoringAlgorithm;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -71,4 +84,111 @@ public class MessageTest {
 		}
 	}
 
+	/**
+	 * This methods tests FactorMessage.replicate(int slots).
+	 */
+	@Test
+	public void testReplicate () {
+		final FactorMessage message = new FactorMessage(
+				BigInteger.valueOf(8051), BigInteger.valueOf(2), BigInteger.valueOf(89), FactoringAlgorithm.Type.POLLARD_RHO, 7
+		);
+		final List<FactorMessage> copies = message.replicate(3);
+
+		Assert.assertEquals(3, copies.size());
+
+		for (int i = 0; i < copies.size(); i++) {
+			Assert.assertEquals(FactoringAlgorithm.Type.POLLARD_RHO, copies.get(i).getAlgorithm());
+			Assert.assertEquals(7 + i, copies.get(i).getSeed());
+		}
+	}
+
+	@Test
+	public void testUserFactorMessageAlgorithm () {
+		UserToClientMessage.FactorMessage message = UserToClientMessage.FactorMessage.factorMessageFactory(" rho  8051");
+
+		Assert.assertEquals(BigInteger.valueOf(8051), message.getN());
+		Assert.assertEquals(FactoringAlgorithm.Type.POLLARD_RHO, message.getAlgorithm());
+
+		message = UserToClientMessage.FactorMessage.factorMessageFactory("8 051");
+		Assert.assertEquals(BigInteger.valueOf(8051), message.getN());
+		Assert.assertEquals(FactoringAlgorithm.Type.TRIAL_DIVISION, message.getAlgorithm());
+
+		Assert.assertNull(UserToClientMessage.FactorMessage.factorMessageFactory("ecm 8051"));
+	}
+
+	/**
+	 * This methods tests that MessageCodec decodes what it encodes, in fewer bytes than Java serialization.
+	 */
+	@Test
+	public void testCodec () throws Exception {
+		final BigInteger n = new BigInteger("618970019642690137449562111");
+		final ServerToClientMessage.BatchMessage batch = new ServerToClientMessage.BatchMessage(n, 42);
+		final Message[] messages;
+
+		batch.addFactor(BigInteger.valueOf(2), 1);
+		batch.addFactor(BigInteger.valueOf(2), 1);
+		batch.addFactor(BigInteger.valueOf(997), 3);
+		messages = new Message[] {
+				new FactorMessage(n, BigInteger.valueOf(2), BigInteger.valueOf(1000), FactoringAlgorithm.Type.POLLARD_RHO, -3, 42),
+				new ClientToServerMessage.CancelMessage(42),
+				new ServerToClientMessage.FoundMessage(n, BigInteger.valueOf(997)),
+				new ServerToClientMessage.DoneMessage(n, BigInteger.valueOf(2), BigInteger.valueOf(1000)),
+				new ServerToClientMessage.DoneMessage(n, BigInteger.valueOf(2), BigInteger.valueOf(1000), BigInteger.valueOf(997), true, 42),
+				new ServerToClientMessage.InvalidMessage(),
+				batch,
+		};
+
+		for (Message message: messages) {
+			final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+			final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+			final Message decoded;
+
+			MessageCodec.encode(message, new DataOutputStream(binary));
+			new ObjectOutputStream(serialized).writeObject(message);
+			decoded = MessageCodec.decode(new DataInputStream(new ByteArrayInputStream(binary.toByteArray())));
+
+			Assert.assertEquals(message.getClass(), decoded.getClass());
+			Assert.assertEquals(message.toString(), decoded.toString());
+			Assert.assertTrue(binary.size() < serialized.size());
+
+			if (message instanceof FactorMessage) {
+				Assert.assertEquals(42, ((FactorMessage) decoded).getId());
+			}
+			if (message instanceof ServerToClientMessage.DoneMessage) {
+				Assert.assertEquals(
+						((ServerToClientMessage.DoneMessage) message).getCofactor(),
+						((ServerToClientMessage.DoneMessage) decoded).getCofactor()
+				);
+				Assert.assertEquals(
+						((ServerToClientMessage.DoneMessage) message).getId(),
+						((ServerToClientMessage.DoneMessage) decoded).getId()
+				);
+			}
+			if (message instanceof ServerToClientMessage.BatchMessage) {
+				Assert.assertEquals(42, ((ServerToClientMessage.BatchMessage) decoded).getId());
+			}
+		}
+	}
+
+	/**
+	 * This methods tests the run-length form of BatchMessage.
+	 */
+	@Test
+	public void testBatch () {
+		final ServerToClientMessage.BatchMessage batch = new ServerToClientMessage.BatchMessage(BigInteger.valueOf(1080));
+
+		for (int factor: new int[] {2, 2, 2, 3, 3, 3, 5}) {
+			batch.addFactor(BigInteger.valueOf(factor), 1);
+		}
+
+		Assert.assertEquals(3, batch.size());
+		Assert.assertEquals(Arrays.asList(3, 3, 1), batch.getExponents());
+		Assert.assertEquals(BigInteger.valueOf(1080), BigMath.multiply(batch.getFactors()));
+	}
+
+	@Test(expected = ClassNotFoundException.class)
+	public void testCodecUnknownTag () throws Exception {
+		MessageCodec.decode(new DataInputStream(new ByteArrayInputStream(new byte[] {-1})));
+	}
+
 }
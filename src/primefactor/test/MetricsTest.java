@@ -0,0 +1,59 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.Metrics;
+
+public class MetricsTest {
+
+	@Test
+	public void testHistogram () {
+		final Metrics.Histogram histogram = new Metrics.Histogram();
+
+		Assert.assertEquals(0, histogram.getPercentile(50));
+
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(1000 * 1000, histogram.getMax());
+		Assert.assertEquals(500500, histogram.getMean(), 1e-6);
+
+		//Percentiles are known within 1 / CONST_SUB_BUCKETS of the actual value
+		for (int percentile: new int[] {1, 50, 90, 99, 100}) {
+			final double actual = percentile * 10 * 1000;
+
+			Assert.assertTrue(histogram.getPercentile(percentile) >= actual);
+			Assert.assertTrue(histogram.getPercentile(percentile) <= actual * (1 + 1.0 / Metrics.Histogram.CONST_SUB_BUCKETS));
+		}
+	}
+
+	@Test
+	public void testHistogramExtremes () {
+		final Metrics.Histogram histogram = new Metrics.Histogram();
+
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		Assert.assertEquals(0, histogram.getPercentile(50));
+		Assert.assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testRegistry () {
+		Metrics.counter("test.counter").add(3);
+		Metrics.counter("test.counter").increment();
+		Metrics.histogram("test.histogram").record(42);
+
+		Assert.assertSame(Metrics.histogram("test.histogram"), Metrics.histogram("test.histogram"));
+		Assert.assertEquals(4, Metrics.getInstance().getCounter("test.counter"));
+		Assert.assertEquals(0, Metrics.getInstance().getCounter("test.missing"));
+		Assert.assertTrue(Metrics.getInstance().getText().contains("test.counter 4 "));
+		Assert.assertTrue(Metrics.getInstance().getJson().contains("\"test.counter\":4"));
+		Assert.assertTrue(Metrics.getInstance().getJson().contains("\"test.histogram\":{\"count\":1,"));
+		Assert.assertTrue(Metrics.registerMBean());
+		Assert.assertTrue(Metrics.registerMBean());
+	}
+
+}
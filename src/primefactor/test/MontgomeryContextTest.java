@@ -0,0 +1,70 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.MontgomeryContext;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+public class MontgomeryContextTest {
+
+	private static final int[] CONST_BITS = {2, 31, 32, 33, 64, 65, 127, 1000};
+
+	/**
+	 * Checks products, sums and differences against BigInteger for moduli spanning one to many words, including the
+	 * ones whose top word is full, with results written over an operand.
+	 */
+	@Test
+	public void testArithmetic () {
+		final Random random = new Random(0);
+
+		for (int bits: CONST_BITS) {
+			for (int i = 0; i < 50; i++) {
+				final BigInteger n = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+				final MontgomeryContext context = new MontgomeryContext(n);
+				final BigInteger a = new BigInteger(bits, random).mod(n), b = new BigInteger(bits, random).mod(n);
+				final long[] x = context.toMontgomery(a), y = context.toMontgomery(b), result = context.newResidue();
+
+				Assert.assertEquals(a, context.fromMontgomery(x));
+
+				context.multiply(x, y, result);
+				Assert.assertEquals(a.multiply(b).mod(n), context.fromMontgomery(result));
+				context.add(x, y, result);
+				Assert.assertEquals(a.add(b).mod(n), context.fromMontgomery(result));
+				context.subtract(x, y, result);
+				Assert.assertEquals(a.subtract(b).mod(n), context.fromMontgomery(result));
+
+				context.multiply(x, x, x);
+				Assert.assertEquals(a.multiply(a).mod(n), context.fromMontgomery(x));
+			}
+		}
+
+		//The largest residues, n - 1
+		for (int bits: CONST_BITS) {
+			final BigInteger n = BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE);
+			final MontgomeryContext context = new MontgomeryContext(n);
+			final long[] x = context.toMontgomery(n.subtract(BigInteger.ONE));
+
+			context.add(x, x, x);
+			Assert.assertEquals(n.subtract(BigInteger.valueOf(2)), context.fromMontgomery(x));
+			context.multiply(x, x, x);
+			Assert.assertEquals(BigInteger.valueOf(4).mod(n), context.fromMontgomery(x));
+		}
+	}
+
+	@Test
+	public void testGcd () {
+		final BigInteger p = new BigInteger("1000003"), q = new BigInteger("618970019642690137449562111");
+		final MontgomeryContext context = new MontgomeryContext(p.multiply(q));
+
+		Assert.assertEquals(q, context.gcd(context.toMontgomery(q.multiply(BigInteger.valueOf(12)))));
+		Assert.assertEquals(BigInteger.ONE, context.gcd(context.toMontgomery(BigInteger.valueOf(12))));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEvenModulus () {
+		new MontgomeryContext(BigInteger.valueOf(1 << 20));
+	}
+
+}
@@ -0,0 +1,126 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.BigMath;
+import primefactor.util.PrimeStore;
+import primefactor.util.SegmentedSieve;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ExecutionException;
+
+public class PrimeStoreTest {
+
+	private static final long CONST_SPAN = PrimeStore.CONST_SEGMENT_SPAN;
+
+	/**
+	 * Checks the primes streamed by a store filled in the background against a {@link SegmentedSieve}, within and
+	 * across segments, and that a store reopened from the same directory covers the same values at once.
+	 */
+	@Test
+	public void testPrimes () throws IOException, InterruptedException, ExecutionException {
+		final File directory = Files.createTempDirectory("primes").toFile();
+		final long[][] ranges = {
+				{1, 100},
+				{1, 1},
+				{2, 2},
+				{3, 3},
+				{24, 28},
+				{CONST_SPAN - 1_000, CONST_SPAN + 1_000},
+				{CONST_SPAN + 1, CONST_SPAN + 1},
+				{2 * CONST_SPAN - 100_000, 2 * CONST_SPAN - 1},
+		};
+
+		try (PrimeStore store = new PrimeStore(directory)) {
+			Assert.assertEquals(-1, store.getBound());
+
+			store.fillAsync(CONST_SPAN).get();
+
+			Assert.assertEquals(2 * CONST_SPAN - 1, store.getBound());
+
+			try (PrimeStore reopened = new PrimeStore(directory)) {
+				Assert.assertEquals(store.getBound(), reopened.getBound());
+
+				for (long[] range: ranges) {
+					final PrimitiveIterator.OfLong primes = reopened.primes(range[0], range[1]);
+					final SegmentedSieve sieve = new SegmentedSieve(range[0], range[1]);
+
+					while (sieve.hasNext()) {
+						Assert.assertTrue(primes.hasNext());
+						Assert.assertEquals(sieve.nextLong(), primes.nextLong());
+					}
+
+					Assert.assertFalse(primes.hasNext());
+				}
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Checks that trial division finds the same factors with the store as without.
+	 */
+	@Test
+	public void testPrimeSource () throws IOException {
+		final File directory = Files.createTempDirectory("primes").toFile();
+		final BigInteger n = new BigInteger("1000003").multiply(new BigInteger("33554393")).multiply(new BigInteger("18446744073709551629"));
+		final BigInteger low = BigInteger.valueOf(1000), high = BigInteger.valueOf(CONST_SPAN - 1);
+
+		final List<BigInteger> expected = BigMath.primeFactorsOf(n, low, high);
+
+		try (PrimeStore store = new PrimeStore(directory)) {
+			store.fill(0);
+			BigMath.setPrimeSource(store);
+
+			Assert.assertEquals(2, expected.size());
+			Assert.assertEquals(expected, BigMath.primeFactorsOf(n, low, high));
+		} finally {
+			BigMath.setPrimeSource(null);
+			delete(directory);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHighInvalid () throws IOException {
+		final File directory = Files.createTempDirectory("primes").toFile();
+
+		try (PrimeStore store = new PrimeStore(directory)) {
+			store.primes(1, 10);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Checks that a bound whose segment index does not fit in an int is rejected rather than wrapped around.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testFillInvalid () throws IOException {
+		final File directory = Files.createTempDirectory("primes").toFile();
+
+		try (PrimeStore store = new PrimeStore(directory)) {
+			store.fill(PrimeStore.CONST_MAX_BOUND + 1);
+		} finally {
+			delete(directory);
+		}
+	}
+
+	private static void delete (File directory) {
+		final File[] files = directory.listFiles();
+
+		if (files != null) {
+			for (File file: files) {
+				file.delete();
+			}
+		}
+
+		directory.delete();
+	}
+
+}
@@ -0,0 +1,85 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.BigMath;
+import primefactor.util.PrimeTable;
+import primefactor.util.SegmentedSieve;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+public class PrimeTableTest {
+
+	private static final long CONST_BOUND = 3_000_000;
+
+	/**
+	 * Checks the primes streamed by the table against a {@link SegmentedSieve}, from lows falling on and between
+	 * index entries.
+	 */
+	@Test
+	public void testPrimes () throws IOException {
+		final File file = File.createTempFile("primes", ".table");
+		final PrimeTable table;
+		final long[][] ranges = {
+				{1, 100},
+				{1, 1},
+				{2, 2},
+				{3, 3},
+				{24, 28},
+				{38_891, 38_891}, //The 4096th odd prime, the first one indexed
+				{38_892, 50_000},
+				{1_000_000, CONST_BOUND},
+		};
+
+		try {
+			PrimeTable.build(file, CONST_BOUND);
+			table = PrimeTable.open(file);
+
+			Assert.assertSame(table, PrimeTable.open(file));
+			Assert.assertEquals(CONST_BOUND, table.getBound());
+			Assert.assertEquals(216_816, table.size());
+
+			for (long[] range: ranges) {
+				final PrimitiveIterator.OfLong primes = table.primes(range[0], range[1]);
+				final SegmentedSieve sieve = new SegmentedSieve(range[0], range[1]);
+
+				while (sieve.hasNext()) {
+					Assert.assertTrue(primes.hasNext());
+					Assert.assertEquals(sieve.nextLong(), primes.nextLong());
+				}
+
+				Assert.assertFalse(primes.hasNext());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Checks that trial division finds the same factors with the table as without.
+	 */
+	@Test
+	public void testPrimeSource () throws IOException {
+		final File file = File.createTempFile("primes", ".table");
+		final BigInteger n = new BigInteger("1000003").multiply(new BigInteger("2999999")).multiply(new BigInteger("18446744073709551629"));
+		final BigInteger low = BigInteger.valueOf(1000), high = BigInteger.valueOf(CONST_BOUND);
+
+		final List<BigInteger> expected = BigMath.primeFactorsOf(n, low, high);
+
+		try {
+			PrimeTable.build(file, CONST_BOUND);
+			BigMath.setPrimeSource(PrimeTable.open(file));
+
+			Assert.assertEquals(2, expected.size());
+			Assert.assertEquals(expected, BigMath.primeFactorsOf(n, low, high));
+		} finally {
+			BigMath.setPrimeSource(null);
+			file.delete();
+		}
+	}
+
+}
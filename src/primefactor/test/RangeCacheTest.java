@@ -0,0 +1,98 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.BigMath;
+import primefactor.util.RangeCache;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RangeCacheTest {
+
+	private static final BigInteger N = BigInteger.valueOf(2).pow(20)
+			.multiply(BigInteger.valueOf(3 * 3 * 101 * 103))
+			.multiply(BigInteger.valueOf(1_000_003));
+
+	/**
+	 * Checks that a range is answered from the overlapping cached ranges, and that once the gaps left are put back the
+	 * factors looked up are those computed from scratch.
+	 */
+	@Test
+	public void testLookup () {
+		final RangeCache cache = new RangeCache();
+		RangeCache.Lookup lookup;
+
+		put(cache, 100, 102);
+		put(cache, 150, 200);
+
+		lookup = cache.lookup(N, BigInteger.valueOf(2), BigInteger.valueOf(300));
+		Assert.assertEquals(Arrays.asList(BigInteger.valueOf(101)), lookup.getFactors());
+		Assert.assertEquals("[[2, 99], [103, 149], [201, 300]]", lookup.getGaps().toString());
+		Assert.assertEquals(1, cache.getMisses());
+
+		for (RangeCache.Range gap: lookup.getGaps()) {
+			put(cache, gap.getLowBound().longValue(), gap.getHighBound().longValue());
+		}
+
+		//Adjacent ranges were merged
+		Assert.assertEquals(1, cache.size());
+
+		for (long[] range: new long[][] {{2, 300}, {3, 102}, {102, 103}, {104, 300}}) {
+			lookup = cache.lookup(N, BigInteger.valueOf(range[0]), BigInteger.valueOf(range[1]));
+
+			Assert.assertTrue(lookup.getGaps().isEmpty());
+			Assert.assertEquals(factors(range[0], range[1]), lookup.getFactors());
+		}
+
+		Assert.assertEquals(4, cache.getHits());
+		Assert.assertEquals(1, cache.lookup(N.add(BigInteger.ONE), BigInteger.valueOf(2), BigInteger.TEN).getGaps().size());
+	}
+
+	@Test
+	public void testOverlapRejected () {
+		final RangeCache cache = new RangeCache();
+
+		Assert.assertTrue(put(cache, 2, 100));
+		Assert.assertFalse(put(cache, 100, 200));
+		Assert.assertFalse(put(cache, 50, 60));
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testEviction () {
+		final long capacity = 4 * RangeCache.CONST_RANGE_OVERHEAD_BYTES;
+		final RangeCache cache = new RangeCache(capacity);
+
+		for (long low = 2; low < 2000; low += 20) {
+			put(cache, low, low + 9);
+			Assert.assertTrue(cache.getBytes() <= capacity);
+		}
+
+		Assert.assertTrue(cache.size() > 0);
+		Assert.assertTrue(cache.lookup(N, BigInteger.valueOf(2), BigInteger.valueOf(11)).getGaps().size() > 0);
+		Assert.assertTrue(cache.lookup(N, BigInteger.valueOf(1982), BigInteger.valueOf(1991)).getGaps().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityInvalid () {
+		new RangeCache(0);
+	}
+
+	private static boolean put (RangeCache cache, long low, long high) {
+		return cache.put(N, BigInteger.valueOf(low), BigInteger.valueOf(high), factors(low, high));
+	}
+
+	private static List<BigInteger> factors (long low, long high) {
+		final List<BigInteger> result = new ArrayList<>(
+				BigMath.primeFactorsOf(N, BigInteger.valueOf(low), BigInteger.valueOf(high), 20)
+		);
+
+		result.sort(null);
+
+		return result;
+	}
+
+}
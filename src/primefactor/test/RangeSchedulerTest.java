@@ -0,0 +1,82 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.net.MasterClient.RangeScheduler;
+import primefactor.net.message.ClientToServerMessage.FactorMessage;
+
+import java.math.BigInteger;
+import java.util.TreeMap;
+
+public class RangeSchedulerTest {
+
+	/**
+	 * Checks that the chunks handed out cover the whole range exactly once, both when workers ask in turn and when a
+	 * single one does all the work, stealing from the others.
+	 */
+	@Test
+	public void testCoverage () {
+		final FactorMessage message = new FactorMessage(
+				BigInteger.valueOf(1_000_000_007L * 1_000_000_009L),
+				BigInteger.valueOf(2),
+				BigInteger.valueOf(1_000_003)
+		);
+		final int[][] schedules = {{5, 16}, {1, 1}, {3, 7}};
+
+		for (int[] schedule: schedules) {
+			final int workers = schedule[0];
+
+			//Workers taking turns
+			assertCovers(message, new RangeScheduler(message, workers, schedule[1]), workers, true);
+
+			//Worker 0 alone
+			final RangeScheduler scheduler = new RangeScheduler(message, workers, schedule[1]);
+
+			assertCovers(message, scheduler, workers, false);
+			Assert.assertTrue(workers == 1 || scheduler.getSteals() > 0);
+		}
+	}
+
+	@Test
+	public void testNarrowRange () {
+		final FactorMessage message = new FactorMessage(BigInteger.valueOf(100), BigInteger.valueOf(2), BigInteger.valueOf(4));
+		final RangeScheduler scheduler = new RangeScheduler(message, 5, 16);
+
+		assertCovers(message, scheduler, 5, true);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWorkersInvalid () {
+		new RangeScheduler(new FactorMessage(BigInteger.TEN, BigInteger.valueOf(2), BigInteger.valueOf(3)), 0, 1);
+	}
+
+	private static void assertCovers (FactorMessage message, RangeScheduler scheduler, int workers, boolean turns) {
+		final TreeMap<BigInteger, BigInteger> chunks = new TreeMap<>();
+		BigInteger expectedLow = message.getLowBound();
+		FactorMessage chunk;
+		int worker = 0;
+
+		//A worker is only refused a chunk once the whole range has been handed out
+		while ((chunk = scheduler.next(worker)) != null) {
+			Assert.assertEquals(message.getN(), chunk.getN());
+			Assert.assertTrue(chunk.getLowBound().compareTo(chunk.getHighBound()) <= 0);
+			Assert.assertNull(chunks.put(chunk.getLowBound(), chunk.getHighBound()));
+
+			if (turns) {
+				worker = (worker + 1) % workers;
+			}
+		}
+
+		for (BigInteger low: chunks.keySet()) {
+			Assert.assertEquals(expectedLow, low);
+			expectedLow = chunks.get(low).add(BigInteger.ONE);
+		}
+
+		Assert.assertEquals(message.getHighBound().add(BigInteger.ONE), expectedLow);
+
+		for (worker = 0; worker < workers; worker++) {
+			Assert.assertNull(scheduler.next(worker));
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.SegmentedSieve;
+
+import java.math.BigInteger;
+
+public class SegmentedSieveTest {
+
+	/**
+	 * Checks the sieve against {@link BigInteger#isProbablePrime(int)} over ranges spanning more than one window.
+	 */
+	@Test
+	public void testPrimes () {
+		final long[][] ranges = {
+				{1, 100},
+				{2, 2},
+				{4, 4},
+				{90, 97},
+				{999_000, 1_600_000},
+				{1_000_000_000_000L, 1_000_000_100_000L},
+		};
+
+		for (long[] range: ranges) {
+			final SegmentedSieve sieve = new SegmentedSieve(range[0], range[1]);
+
+			for (long i = range[0]; i <= range[1]; i++) {
+				if (BigInteger.valueOf(i).isProbablePrime(20)) {
+					Assert.assertTrue(sieve.hasNext());
+					Assert.assertEquals(i, sieve.nextLong());
+				}
+			}
+
+			Assert.assertFalse(sieve.hasNext());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLowInvalid () {
+		new SegmentedSieve(0, 10);
+	}
+
+}
@@ -0,0 +1,68 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.ThreadPools;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class ThreadPoolsTest {
+
+	/**
+	 * Checks that tasks blocking until all of them started do not deadlock, that is that each of them is given a
+	 * thread of its own, whichever kind of threads is in use.
+	 */
+	@Test
+	public void testPerTask () throws InterruptedException {
+		final int tasks = 32;
+
+		for (String virtual: new String[] {"false", "true"}) {
+			final String previous = System.setProperty(ThreadPools.CONST_PROP_VIRTUAL, virtual);
+			final ExecutorService executor = ThreadPools.newPerTaskExecutor(ThreadPoolsTest.class.getSimpleName());
+			final CountDownLatch started = new CountDownLatch(tasks), finished = new CountDownLatch(tasks);
+			final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+			try {
+				for (int i = 0; i < tasks; i++) {
+					executor.execute(() -> {
+						threads.add(Thread.currentThread());
+						started.countDown();
+
+						try {
+							started.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+
+						finished.countDown();
+					});
+				}
+
+				Assert.assertTrue(finished.await(10, TimeUnit.SECONDS));
+				Assert.assertEquals(tasks, threads.size());
+
+				for (Thread thread: threads) {
+					Assert.assertTrue(thread.isDaemon());
+				}
+			} finally {
+				executor.shutdown();
+
+				if (previous == null) {
+					System.clearProperty(ThreadPools.CONST_PROP_VIRTUAL);
+				} else {
+					System.setProperty(ThreadPools.CONST_PROP_VIRTUAL, previous);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testIoShared () {
+		Assert.assertSame(ThreadPools.io(), ThreadPools.io());
+	}
+
+}
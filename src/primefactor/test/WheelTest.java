@@ -0,0 +1,71 @@
+package primefactor.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import primefactor.util.Wheel;
+
+import java.math.BigInteger;
+
+public class WheelTest {
+
+	/**
+	 * Checks that the wheel yields exactly 2, 3, 5, 7 and the numbers coprime with 210 in a range, whatever its ends
+	 * are aligned to.
+	 */
+	@Test
+	public void testCandidates () {
+		final long[][] ranges = {
+				{1, 300},
+				{2, 2},
+				{4, 6},
+				{8, 10},
+				{11, 11},
+				{209, 212},
+				{1_000_000_000_000L, 1_000_000_010_000L},
+		};
+
+		for (long[] range: ranges) {
+			final Wheel wheel = new Wheel(range[0], range[1]);
+			final Wheel.OfBigInteger bigWheel = new Wheel.OfBigInteger(BigInteger.valueOf(range[0]), BigInteger.valueOf(range[1]));
+
+			for (long i = range[0]; i <= range[1]; i++) {
+				if (isCandidate(i)) {
+					Assert.assertTrue(wheel.hasNext());
+					Assert.assertEquals(i, wheel.nextLong());
+					Assert.assertTrue(bigWheel.hasNext());
+					Assert.assertEquals(BigInteger.valueOf(i), bigWheel.next());
+				}
+			}
+
+			Assert.assertFalse(wheel.hasNext());
+			Assert.assertFalse(bigWheel.hasNext());
+		}
+	}
+
+	/**
+	 * Checks that about 77% of a range far from 0 is skipped.
+	 */
+	@Test
+	public void testDensity () {
+		final BigInteger low = BigInteger.ONE.shiftLeft(100);
+		final Wheel.OfBigInteger wheel = new Wheel.OfBigInteger(low, low.add(BigInteger.valueOf(210 * 1000 - 1)));
+		int count = 0;
+
+		while (wheel.hasNext()) {
+			Assert.assertEquals(1, wheel.next().gcd(BigInteger.valueOf(210)).intValue());
+			count++;
+		}
+
+		Assert.assertEquals(48 * 1000, count);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLowInvalid () {
+		new Wheel(0, 10);
+	}
+
+	private static boolean isCandidate (long i) {
+		return i == 2 || i == 3 || i == 5 || i == 7 || (i % 2 != 0 && i % 3 != 0 && i % 5 != 0 && i % 7 != 0 && i != 1);
+	}
+
+}
@@ -0,0 +1,17 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A {@link FactoringAlgorithm} delegating to {@link BigMath#primeFactorsOfBatched(BigInteger, BooleanSupplier)}.
+ */
+public class BatchTrialDivision implements FactoringAlgorithm {
+
+	@Override
+	public List<BigInteger> primeFactorsOf (BigInteger n, BooleanSupplier cancelled) {
+		return BigMath.primeFactorsOfBatched(n, cancelled);
+	}
+
+}
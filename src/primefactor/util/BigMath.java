@@ -5,31 +5,135 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 
 public class BigMath {
 
 	private static int CONST_PRIME_CERTAINTY = 10;
 	private static BigInteger CONST_MIN_LOW = BigInteger.valueOf(2);
+	/**
+	 * Number of leading bits of n whose square root is computed in floating point as a starting guess for sqrt(n).
+	 */
+	private static final int CONST_SQRT_GUESS_BITS = 100;
+	/**
+	 * Largest r such that r * r fits in a long, that is floor(sqrt(Long.MAX_VALUE)).
+	 */
+	private static final long CONST_MAX_LONG_ROOT = 3037000499L;
+	/**
+	 * Bit i is set iff i is a square modulo 64.
+	 */
+	private static final long CONST_SQUARES_MOD_64 = squaresMod64();
+	/**
+	 * Number of candidate divisors tried between two checks of whether the computation was cancelled. Must be a power
+	 * of 2.
+	 */
+	private static final int CONST_CANCEL_CHECK_INTERVAL = 1 << 12;
+	private static final BooleanSupplier CONST_NOT_CANCELLED = () -> false;
+	/**
+	 * A range narrower than sqrt(high) / CONST_WHEEL_WIDTH_RATIO is searched with a {@link Wheel} rather than a
+	 * {@link SegmentedSieve}, whose cost is dominated by the base primes up to sqrt(high). The ratio is larger when
+	 * remainders allocate, n being too large for a long and divisors exceeding 31 bits: each composite the wheel yields
+	 * then costs more than the sieve spends per base prime.
+	 */
+	private static final int CONST_WHEEL_WIDTH_RATIO = 1;
+	private static final int CONST_WHEEL_WIDTH_RATIO_BIG = 64;
+
+	/**
+	 * Number of candidate divisors tried by trial division, and time taken to search each range.
+	 */
+	private static final LongAdder divisorsTried = Metrics.counter("bigmath.divisors");
+	private static final Metrics.Histogram rangeNanos = Metrics.histogram("bigmath.range.nanos");
+	private static final Metrics.Histogram forkJoinNanos = Metrics.histogram("bigmath.forkjoin.nanos");
+	private static final Metrics.Histogram batchedNanos = Metrics.histogram("bigmath.batched.nanos");
+
+	private static volatile PrimeSource primeSource;
+
+	/**
+	 * @param source source trial division draws its divisors from when it covers the range searched, instead of
+	 *               sieving them, or null for none.
+	 */
+	public static void setPrimeSource (PrimeSource source) {
+		primeSource = source;
+	}
+
+	public static PrimeSource getPrimeSource () {
+		return primeSource;
+	}
 
 	/**
 	 * Given a BigInteger input n, where n >= 0, returns the largest BigInteger r such that r*r <= n.<br>
 	 * For n < 0, returns 0.<br>
-	 * details: http://faruk.akgul.org/blog/javas-missing-algorithm-biginteger-sqrt
+	 * The root is computed with Newton's method, starting from an overestimate whose leading bits come from a
+	 * floating point square root, so that only a few iterations are needed even for numbers thousands of bits long.
 	 *
 	 * @param n BigInteger input.
 	 * @return for n >= 0: largest BigInteger r such that r*r <= n; for n <  0: BigInteger 0.
 	 */
 	public static BigInteger sqrt (BigInteger n) {
-		BigInteger a = BigInteger.ONE;
-		BigInteger b = new BigInteger(n.shiftRight(5).add(new BigInteger("8")).toString());
-		while (b.compareTo(a) >= 0) {
-			BigInteger mid = new BigInteger(a.add(b).shiftRight(1).toString());
-			if (mid.multiply(mid).compareTo(n) > 0)
-				b = mid.subtract(BigInteger.ONE);
-			else
-				a = mid.add(BigInteger.ONE);
+		final int shift;
+		BigInteger x, y;
+
+		if (n.signum() <= 0) {
+			return BigInteger.ZERO;
+		}
+		if (n.bitLength() < Long.SIZE - 1) {
+			return BigInteger.valueOf(sqrt(n.longValue()));
+		}
+
+		//Take the square root of the top bits of n, rounded up so that x >= sqrt(n) still holds
+		shift = Math.max(0, n.bitLength() - CONST_SQRT_GUESS_BITS) & ~1;
+		x = BigInteger.valueOf((long) Math.sqrt(n.shiftRight(shift).doubleValue()) + 2).shiftLeft(shift / 2);
+
+		//Starting from above the root, Newton's iteration decreases until it reaches it
+		while (true) {
+			y = x.add(n.divide(x)).shiftRight(1);
+
+			if (y.compareTo(x) >= 0) {
+				return x;
+			}
+
+			x = y;
+		}
+	}
+
+	/**
+	 * @return the largest r such that r * r <= n, for n >= 0.
+	 */
+	public static long sqrt (long n) {
+		//Capped so that neither r * r nor (r + 1) * (r + 1) below can overflow
+		long r = Math.min((long) Math.sqrt((double) n), CONST_MAX_LONG_ROOT);
+
+		//The double approximation can be off by one in either direction
+		while (r * r > n) {
+			r--;
 		}
-		return a.subtract(BigInteger.ONE);
+		while (r < CONST_MAX_LONG_ROOT && (r + 1) * (r + 1) <= n) {
+			r++;
+		}
+
+		return r;
+	}
+
+	/**
+	 * @return true if n = r * r for some BigInteger r, false otherwise.
+	 */
+	public static boolean isPerfectSquare (BigInteger n) {
+		final BigInteger root;
+
+		if (n.signum() < 0) {
+			return false;
+		}
+		//Squares can only be congruent to 0, 1, 4, 9, 16, 17, 25, 33, 36, 41, 49 or 57 mod 64
+		if (((CONST_SQUARES_MOD_64 >>> (n.intValue() & 63)) & 1) == 0) {
+			return false;
+		}
+
+		root = sqrt(n);
+
+		return root.multiply(root).equals(n);
 	}
 
 	/**
@@ -38,13 +142,47 @@ public class BigMath {
 	 * @return a list of <i>all</i> the prime factors of n calculated from 2 to sqrt(n).
 	 */
 	public static List<BigInteger> primeFactorsOf (BigInteger n) {
+		return primeFactorsOf(n, CONST_NOT_CANCELLED);
+	}
+
+	/**
+	 * A variant of {@link BigMath#primeFactorsOf(BigInteger)} which can be stopped before completion.
+	 * @param cancelled checked every now and then: once it returns true, the prime factors found so far are returned.
+	 */
+	public static List<BigInteger> primeFactorsOf (BigInteger n, BooleanSupplier cancelled) {
 		final List<BigInteger> result;
 
 		if (n.compareTo(BigInteger.ZERO) == 1 && n.compareTo(BigInteger.valueOf(4)) == -1) { //If is 0 < n <= 3
 			result = new LinkedList<>();
 			result.add(n);
 		} else {
-			result = primeFactorsOf(n, CONST_MIN_LOW, sqrt(n));
+			result = primeFactorsOf(n, CONST_MIN_LOW, sqrt(n), CONST_PRIME_CERTAINTY, cancelled);
+
+			for (BigInteger factor: result) {
+				n = n.divide(factor);
+			}
+
+			if (n.isProbablePrime(CONST_PRIME_CERTAINTY) && n.compareTo(BigInteger.ONE) == 1) {
+				result.add(n);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * A variant of {@link BigMath#primeFactorsOf(BigInteger)} splitting the divisors tried across the threads of pool.
+	 * @param pool pool to run the search in, such as {@link ForkJoinPool#commonPool()} for using every core.
+	 * @return a list of <i>all</i> the prime factors of n, in increasing order.
+	 */
+	public static List<BigInteger> primeFactorsOf (BigInteger n, ForkJoinPool pool) {
+		final List<BigInteger> result;
+
+		if (n.compareTo(BigInteger.ZERO) == 1 && n.compareTo(BigInteger.valueOf(4)) == -1) { //If is 0 < n <= 3
+			result = new LinkedList<>();
+			result.add(n);
+		} else {
+			result = primeFactorsOf(n, CONST_MIN_LOW, sqrt(n), CONST_PRIME_CERTAINTY, CONST_NOT_CANCELLED, pool);
 
 			for (BigInteger factor: result) {
 				n = n.divide(factor);
@@ -76,7 +214,25 @@ public class BigMath {
 	 * @return a list of prime factors of n such that if f belongs to this list, then low <= f <= high.
 	 */
 	public static List<BigInteger> primeFactorsOf (BigInteger n, BigInteger low, BigInteger high, int primeCertainty) {
-		final List<BigInteger> factors = new LinkedList<>();
+		return primeFactorsOf(n, low, high, primeCertainty, CONST_NOT_CANCELLED);
+	}
+
+	/**
+	 * A variant of {@link BigMath#primeFactorsOf(BigInteger, BigInteger, BigInteger, int)} which can be stopped before
+	 * completion.<br>
+	 * Divisors are only tried up to the cofactor of n left once the factors found so far are divided out, which
+	 * shrinks as they are found. When low <= 2 the bound is even its square root: the cofactor left then being 1 or
+	 * prime, it is added to the result if it is <= high.<br>
+	 * Divisors are drawn from the {@link PrimeSource} set, a {@link SegmentedSieve} or a {@link Wheel}, so that few of
+	 * them are composite.
+	 * @param cancelled checked every now and then: once it returns true, the prime factors found so far are returned.
+	 */
+	public static List<BigInteger> primeFactorsOf (BigInteger n, BigInteger low, BigInteger high, int primeCertainty, BooleanSupplier cancelled) {
+		final List<BigInteger> factors;
+		final boolean fromTwo = low.compareTo(CONST_MIN_LOW) <= 0;
+		final long start = System.nanoTime();
+		BigInteger bound;
+		long tried = 0;
 
 		if (n.compareTo(new BigInteger("2")) == -1) {
 			throw new IllegalArgumentException(String.format("Parameter n has value %s < 2", n));
@@ -90,18 +246,328 @@ public class BigMath {
 			);
 		}
 
-		for (BigInteger divisor = low; divisor.compareTo(high) < 1; divisor = divisor.add(BigInteger.ONE)) {
-			if (divisor.isProbablePrime(primeCertainty)) {
+		if (high.bitLength() < Long.SIZE - 1) {
+			factors = primeFactorsOf(
+					n, candidates(n, low.longValue(), high.longValue()), primeCertainty, fromTwo, cancelled
+			);
+
+			//The cofactor the search stopped at may lie past high
+			if (!factors.isEmpty() && factors.get(factors.size() - 1).compareTo(high) > 0) {
+				factors.remove(factors.size() - 1);
+			}
+
+			rangeNanos.recordSince(start);
+
+			return factors;
+		}
+
+		factors = new LinkedList<>();
+		bound = fromTwo ? sqrt(n) : n;
+
+		for (Iterator<BigInteger> candidates = new Wheel.OfBigInteger(low, high); candidates.hasNext(); ) {
+			final BigInteger divisor = candidates.next();
+
+			if ((++tried & (CONST_CANCEL_CHECK_INTERVAL - 1)) == 0 && cancelled.getAsBoolean()) {
+				break;
+			}
+
+			if (divisor.compareTo(bound) > 0) {
+				if (fromTwo && n.compareTo(BigInteger.ONE) > 0 && n.compareTo(high) <= 0) {
+					factors.add(n); //No prime up to sqrt(n) divides n, which is thus prime
+				}
+				break;
+			}
+
+			//The wheel yields some composites, only those dividing n are worth a primality test
+			if (n.remainder(divisor).signum() == 0 && divisor.isProbablePrime(primeCertainty)) {
 				while (n.remainder(divisor).compareTo(BigInteger.ZERO) == 0) {
 					n = n.divide(divisor);
 					factors.add(divisor);
+					bound = fromTwo ? sqrt(n) : n;
+				}
+			}
+		}
+
+		divisorsTried.add(tried);
+		rangeNanos.recordSince(start);
+
+		return factors;
+	}
+
+	/**
+	 * A variant of {@link BigMath#primeFactorsOf(BigInteger, BigInteger, BigInteger, int, BooleanSupplier)} splitting
+	 * [low, high] recursively across the threads of pool, each part being searched as that method does.<br>
+	 * The factors found by each part are divided out of n, so that the parts started later search a smaller cofactor,
+	 * and all the parts stop once the cofactor left is 1 or prime.
+	 * @param cancelled checked every now and then, by one thread of pool at a time.
+	 * @param pool pool to run the search in, such as {@link ForkJoinPool#commonPool()} for using every core.
+	 * @return a list of the prime factors f of n such that low <= f <= high, in increasing order.
+	 */
+	public static List<BigInteger> primeFactorsOf (BigInteger n, BigInteger low, BigInteger high, int primeCertainty, BooleanSupplier cancelled, ForkJoinPool pool) {
+		final List<BigInteger> factors;
+		final long start = System.nanoTime();
+
+		if (n.compareTo(new BigInteger("2")) == -1) {
+			throw new IllegalArgumentException(String.format("Parameter n has value %s < 2", n));
+		}
+		if (low.compareTo(BigInteger.ONE) == -1 || high.compareTo(low) == -1) {
+			throw new IllegalArgumentException(
+					String.format(
+							"low and high parameters are not such that 1 <= low (%s) <= high (%s)",
+							low, high
+					)
+			);
+		}
+
+		factors = ParallelTrialDivision.primeFactorsOf(n, low, high, primeCertainty, cancelled, pool);
+		factors.sort(null);
+		forkJoinNanos.recordSince(start);
+
+		return factors;
+	}
+
+	/**
+	 * A variant of {@link BigMath#primeFactorsOf(BigInteger, BooleanSupplier)} trying the divisors by blocks, as
+	 * {@link BigMath#primeFactorsOfBatched(BigInteger, BigInteger, BigInteger, int, BooleanSupplier)} does.
+	 */
+	public static List<BigInteger> primeFactorsOfBatched (BigInteger n, BooleanSupplier cancelled) {
+		final List<BigInteger> result;
+
+		if (n.compareTo(BigInteger.ZERO) == 1 && n.compareTo(BigInteger.valueOf(4)) == -1) { //If is 0 < n <= 3
+			result = new LinkedList<>();
+			result.add(n);
+		} else {
+			result = primeFactorsOfBatched(n, CONST_MIN_LOW, sqrt(n), CONST_PRIME_CERTAINTY, cancelled);
+
+			for (BigInteger factor: result) {
+				n = n.divide(factor);
+			}
+
+			if (n.isProbablePrime(CONST_PRIME_CERTAINTY) && n.compareTo(BigInteger.ONE) == 1) {
+				result.add(n);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * A variant of {@link BigMath#primeFactorsOf(BigInteger, BigInteger, BigInteger, int, BooleanSupplier)} for n of
+	 * thousands of bits, whose remainder by each divisor costs a pass over all its words.<br>
+	 * Divisors are instead multiplied together by blocks, along a product tree, and a block is only looked into when
+	 * the gcd of n with its product is not 1: a single multi-precision gcd thus replaces the remainders by all the
+	 * divisors of a block. Smaller n are searched as that method does, which is then faster.
+	 * @return a list of the prime factors f of n such that low <= f <= high, in increasing order.
+	 */
+	public static List<BigInteger> primeFactorsOfBatched (BigInteger n, BigInteger low, BigInteger high, int primeCertainty, BooleanSupplier cancelled) {
+		final List<BigInteger> factors;
+		final long start = System.nanoTime();
+
+		if (n.compareTo(new BigInteger("2")) == -1) {
+			throw new IllegalArgumentException(String.format("Parameter n has value %s < 2", n));
+		}
+		if (low.compareTo(BigInteger.ONE) == -1 || high.compareTo(low) == -1) {
+			throw new IllegalArgumentException(
+					String.format(
+							"low and high parameters are not such that 1 <= low (%s) <= high (%s)",
+							low, high
+					)
+			);
+		}
+
+		factors = ProductTreeDivision.primeFactorsOf(n, low, high, primeCertainty, cancelled);
+		batchedNanos.recordSince(start);
+
+		return factors;
+	}
+
+	/**
+	 * Trial divides n by every value yielded by candidates, such as the primes streamed by a {@link SegmentedSieve}.<br>
+	 * A candidate is only checked for primality once it is known to divide n, so candidates need not all be prime;
+	 * they must however be >= 2 and in increasing order.
+	 * @param n BigInteger to find prime factors for.
+	 * @param candidates increasing sequence of divisors to try.
+	 * @param primeCertainty parameter to pass to {@link BigInteger#isProbablePrime(int)}.
+	 * @return a list of the prime factors of n among candidates.
+	 */
+	public static List<BigInteger> primeFactorsOf (BigInteger n, PrimitiveIterator.OfLong candidates, int primeCertainty) {
+		return primeFactorsOf(n, candidates, primeCertainty, CONST_NOT_CANCELLED);
+	}
+
+	/**
+	 * A variant of {@link BigMath#primeFactorsOf(BigInteger, PrimitiveIterator.OfLong, int)} which can be stopped
+	 * before candidates is exhausted.
+	 * @param cancelled checked every now and then: once it returns true, the prime factors found so far are returned.
+	 */
+	public static List<BigInteger> primeFactorsOf (BigInteger n, PrimitiveIterator.OfLong candidates, int primeCertainty, BooleanSupplier cancelled) {
+		return primeFactorsOf(n, candidates, primeCertainty, false, cancelled);
+	}
+
+	/**
+	 * @param fromTwo true if candidates include every prime from 2 on. The search then stops as soon as a candidate
+	 *                exceeds the square root of the cofactor of n left, which is then 1 or prime and, in the latter
+	 *                case, added to the result even though it may not be among candidates.
+	 */
+	private static List<BigInteger> primeFactorsOf (BigInteger n, PrimitiveIterator.OfLong candidates, int primeCertainty, boolean fromTwo, BooleanSupplier cancelled) {
+		final List<BigInteger> factors = new LinkedList<>();
+		int[] magnitude;
+		long divisor, bound, tried = 0;
+		BigInteger factor;
+
+		if (n.bitLength() < Long.SIZE - 1) {
+			primeFactorsOf(n.longValue(), candidates, primeCertainty, fromTwo, cancelled, factors);
+
+			return factors;
+		}
+
+		magnitude = magnitude(n);
+		bound = sqrtBound(n, fromTwo);
+
+		while (candidates.hasNext()) {
+			if ((++tried & (CONST_CANCEL_CHECK_INTERVAL - 1)) == 0 && cancelled.getAsBoolean()) {
+				break;
+			}
+
+			divisor = candidates.nextLong();
+
+			if (divisor > bound) {
+				factors.add(n); //No prime up to sqrt(n) divides n, which is thus prime
+				break;
+			}
+
+			if (remainder(n, magnitude, divisor) == 0 && BigInteger.valueOf(divisor).isProbablePrime(primeCertainty)) {
+				factor = BigInteger.valueOf(divisor);
+
+				do {
+					n = n.divide(factor);
+					factors.add(factor);
+				} while (n.remainder(factor).signum() == 0);
+
+				//Once n fits in a long, carry on with primitive arithmetic only
+				if (n.bitLength() < Long.SIZE - 1) {
+					primeFactorsOf(n.longValue(), candidates, primeCertainty, fromTwo, cancelled, factors);
+					break;
 				}
+
+				magnitude = magnitude(n);
+				bound = sqrtBound(n, fromTwo);
 			}
 		}
 
+		divisorsTried.add(tried);
+
 		return factors;
 	}
 
+	/**
+	 * @return the candidate divisors in [low, high] to try for n: the primes of the PrimeSource set if it covers high,
+	 * otherwise those streamed by a {@link SegmentedSieve}, unless the range is so narrow that a {@link Wheel} is
+	 * cheaper.
+	 */
+	static PrimitiveIterator.OfLong candidates (BigInteger n, long low, long high) {
+		final PrimeSource source = primeSource;
+		final boolean cheapRemainders = n.bitLength() < Long.SIZE - 1 || high <= Integer.MAX_VALUE;
+
+		if (source != null && high <= source.getBound()) {
+			return source.primes(low, high);
+		}
+
+		if (high - low < sqrt(high) / (cheapRemainders ? CONST_WHEEL_WIDTH_RATIO : CONST_WHEEL_WIDTH_RATIO_BIG)) {
+			return new Wheel(low, high);
+		}
+
+		return new SegmentedSieve(low, high);
+	}
+
+	/**
+	 * @return sqrt(n) if fromTwo and it fits in a long, Long.MAX_VALUE otherwise, which no candidate exceeds.
+	 */
+	private static long sqrtBound (BigInteger n, boolean fromTwo) {
+		if (fromTwo && n.bitLength() < 2 * (Long.SIZE - 1)) {
+			return sqrt(n).longValue();
+		}
+
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Primitive counterpart of
+	 * {@link BigMath#primeFactorsOf(BigInteger, PrimitiveIterator.OfLong, int, boolean, BooleanSupplier)}, used when n
+	 * fits in a long. No BigInteger is allocated except for the factors being added to the result.
+	 * @param factors list the prime factors found are appended to.
+	 */
+	private static void primeFactorsOf (long n, PrimitiveIterator.OfLong candidates, int primeCertainty, boolean fromTwo, BooleanSupplier cancelled, List<BigInteger> factors) {
+		long divisor, tried = 0;
+
+		while (candidates.hasNext()) {
+			if ((++tried & (CONST_CANCEL_CHECK_INTERVAL - 1)) == 0 && cancelled.getAsBoolean()) {
+				break;
+			}
+
+			divisor = candidates.nextLong();
+
+			if (fromTwo && divisor > n / divisor) {
+				if (n > 1) {
+					factors.add(BigInteger.valueOf(n)); //No prime up to sqrt(n) divides n, which is thus prime
+				}
+				break;
+			}
+			if (divisor > n) {
+				break; //Candidates are increasing, none of the remaining ones can divide n
+			}
+
+			if (n % divisor == 0 && BigInteger.valueOf(divisor).isProbablePrime(primeCertainty)) {
+				final BigInteger factor = BigInteger.valueOf(divisor);
+
+				do {
+					n /= divisor;
+					factors.add(factor);
+				} while (n % divisor == 0);
+			}
+		}
+
+		divisorsTried.add(tried);
+	}
+
+	/**
+	 * @return n mod divisor, computed without allocating when divisor fits in 31 bits.
+	 * @param magnitude the 32 bit words of n, as returned by {@link BigMath#magnitude(BigInteger)}.
+	 */
+	private static long remainder (BigInteger n, int[] magnitude, long divisor) {
+		long r = 0;
+
+		if (divisor > Integer.MAX_VALUE) {
+			return n.remainder(BigInteger.valueOf(divisor)).longValue();
+		}
+
+		//r < divisor < 2^31 always holds, so shifting it by 32 bits cannot overflow
+		for (int word: magnitude) {
+			r = ((r << Integer.SIZE) | (word & 0xFFFFFFFFL)) % divisor;
+		}
+
+		return r;
+	}
+
+	/**
+	 * @return the big-endian 32 bit words of the non negative BigInteger n.
+	 */
+	private static int[] magnitude (BigInteger n) {
+		final byte[] bytes = n.toByteArray();
+		final int[] words = new int[(bytes.length + 3) / 4];
+
+		for (int i = bytes.length - 1, word = words.length - 1, shift = 0; i >= 0; i--) {
+			words[word] |= (bytes[i] & 0xFF) << shift;
+			shift += Byte.SIZE;
+
+			if (shift == Integer.SIZE) {
+				shift = 0;
+				word--;
+			}
+		}
+
+		return words;
+	}
+
 	public static BigInteger multiply (Collection<BigInteger> integers) {
 		BigInteger result = BigInteger.ONE;
 		final Iterator<BigInteger> it = integers.iterator();
@@ -117,4 +583,14 @@ public class BigMath {
 		return result;
 	}
 
+	private static long squaresMod64 () {
+		long result = 0;
+
+		for (int i = 0; i < 64; i++) {
+			result |= 1L << ((i * i) & 63);
+		}
+
+		return result;
+	}
+
 }
@@ -0,0 +1,97 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * An algorithm computing the complete prime factorization of a BigInteger.
+ */
+public interface FactoringAlgorithm {
+
+	/**
+	 * @param n number to factorize, must be n >= 1.
+	 * @return a list of <i>all</i> the prime factors of n, in increasing order and repeated as many times as they
+	 * divide n.
+	 */
+	default List<BigInteger> primeFactorsOf (BigInteger n) {
+		return primeFactorsOf(n, () -> false);
+	}
+
+	/**
+	 * A variant of {@link FactoringAlgorithm#primeFactorsOf(BigInteger)} which can be stopped before completion.
+	 * @param cancelled checked every now and then: once it returns true, the computation stops and the prime factors
+	 *                  found so far are returned, which may then be only part of those of n.
+	 */
+	List<BigInteger> primeFactorsOf (BigInteger n, BooleanSupplier cancelled);
+
+	/**
+	 * The available algorithms, which can be chosen on a per request basis.
+	 */
+	enum Type {
+
+		/**
+		 * Trial division of n by the primes up to sqrt(n). The range [2, sqrt(n)] can be split across servers.
+		 */
+		TRIAL_DIVISION("trial", true),
+		/**
+		 * Brent's variant of Pollard's rho. Servers run it with different seeds rather than on separate ranges.
+		 */
+		POLLARD_RHO("rho", false),
+		/**
+		 * Trial division of n by blocks of primes at once, for n of thousands of bits. The range [2, sqrt(n)] can be
+		 * split across servers.
+		 */
+		BATCH_TRIAL_DIVISION("batch", true);
+
+		private final String name;
+		private final boolean rangeBased;
+
+		Type (String name, boolean rangeBased) {
+			this.name = name;
+			this.rangeBased = rangeBased;
+		}
+
+		public String getName () {
+			return name;
+		}
+
+		/**
+		 * @return true if the algorithm works on a range of divisors, which can then be partitioned; false if the
+		 * algorithm always works on n as a whole.
+		 */
+		public boolean isRangeBased () {
+			return rangeBased;
+		}
+
+		/**
+		 * @param seed seed of the pseudo random choices of the algorithm, if any.
+		 * @return a new instance of the algorithm of this type.
+		 */
+		public FactoringAlgorithm newInstance (long seed) {
+			switch (this) {
+				case POLLARD_RHO:
+					return new PollardRho(seed);
+				case BATCH_TRIAL_DIVISION:
+					return new BatchTrialDivision();
+				default:
+					return new TrialDivision();
+			}
+		}
+
+		/**
+		 * @return the Type whose name is name, case ignored, or null if no such Type exists.
+		 */
+		public static Type fromName (String name) {
+			for (Type type: values()) {
+				if (type.name.equalsIgnoreCase(name)) {
+					return type;
+				}
+			}
+
+			return null;
+		}
+
+	}
+
+}
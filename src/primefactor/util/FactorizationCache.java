@@ -0,0 +1,265 @@
+package primefactor.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of complete factorizations, keyed by the number factored, which can be used by many threads at
+ * once.<br>
+ * Entries are spread across shards by the hash of their key, each shard being locked on its own and evicting its least
+ * recently used entry once full, so that eviction is least recently used per shard rather than across the whole cache.
+ * Entries also expire after a fixed time to live. The contents can be saved to and loaded from a text file, one entry
+ * per line.
+ */
+public class FactorizationCache {
+
+	public static final int CONST_DEF_CAPACITY = 4096;
+	public static final long CONST_DEF_TTL_MILLIS = 60 * 60 * 1000L;
+	public static final int CONST_MAX_SHARDS = 16;
+
+	private static final String CONST_FILE_SEP = " ";
+
+	private final Shard[] shards;
+	private final long ttlMillis;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public FactorizationCache () {
+		this(CONST_DEF_CAPACITY, CONST_DEF_TTL_MILLIS);
+	}
+
+	/**
+	 * @param capacity maximum number of entries held, must be > 0.
+	 * @param ttlMillis time in milliseconds an entry is valid for after being put, must be > 0.
+	 */
+	public FactorizationCache (int capacity, long ttlMillis) {
+		int shardsNumber;
+
+		if (capacity <= 0 || ttlMillis <= 0) {
+			throw new IllegalArgumentException(
+					String.format("capacity (%d) and ttlMillis (%d) parameters must be greater than 0", capacity, ttlMillis)
+			);
+		}
+
+		//A power of 2, so that a shard is selected by masking, and no more shards than entries
+		shardsNumber = Integer.highestOneBit(Math.min(CONST_MAX_SHARDS, capacity));
+
+		this.shards = new Shard[shardsNumber];
+		this.ttlMillis = ttlMillis;
+
+		for (int i = 0; i < shardsNumber; i++) {
+			//The first capacity % shardsNumber shards hold one more entry than the others
+			shards[i] = new Shard(capacity / shardsNumber + (i < capacity % shardsNumber ? 1 : 0));
+		}
+	}
+
+	/**
+	 * @return the prime factors of n in increasing order if they are cached and have not expired, null otherwise.
+	 */
+	public List<BigInteger> get (BigInteger n) {
+		final Shard shard = shardOf(n);
+		final Factorization entry;
+
+		synchronized (shard) {
+			entry = shard.get(n);
+
+			if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+				shard.remove(n);
+				misses.incrementAndGet();
+
+				return null;
+			}
+		}
+
+		if (entry == null) {
+			misses.incrementAndGet();
+
+			return null;
+		}
+
+		hits.incrementAndGet();
+
+		return entry.factors;
+	}
+
+	/**
+	 * @param factors <i>all</i> the prime factors of n.
+	 */
+	public void put (BigInteger n, List<BigInteger> factors) {
+		put(n, factors, System.currentTimeMillis() + ttlMillis);
+	}
+
+	private void put (BigInteger n, List<BigInteger> factors, long expiresAt) {
+		final List<BigInteger> sorted = new ArrayList<>(factors);
+		final Shard shard = shardOf(n);
+
+		Collections.sort(sorted);
+
+		synchronized (shard) {
+			shard.put(n, new Factorization(Collections.unmodifiableList(sorted), expiresAt));
+		}
+	}
+
+	public long getHits () {
+		return hits.get();
+	}
+
+	public long getMisses () {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of entries held, expired ones included until they are looked up or evicted.
+	 */
+	public int size () {
+		int result = 0;
+
+		for (Shard shard: shards) {
+			synchronized (shard) {
+				result += shard.size();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes the entries which have not expired to file, replacing its contents at once. Each line holds the time an
+	 * entry expires at, in milliseconds since the epoch, followed by n and its prime factors, separated by spaces.
+	 */
+	public void save (File file) throws IOException {
+		final File temporary = new File(file.getPath() + ".tmp");
+		final long now = System.currentTimeMillis();
+
+		try (Writer out = Files.newBufferedWriter(temporary.toPath(), StandardCharsets.US_ASCII)) {
+			for (Shard shard: shards) {
+				final List<Map.Entry<BigInteger, Factorization>> entries;
+
+				synchronized (shard) {
+					entries = new ArrayList<>(shard.entrySet());
+				}
+
+				for (Map.Entry<BigInteger, Factorization> entry: entries) {
+					if (entry.getValue().expiresAt > now) {
+						out.write(Long.toString(entry.getValue().expiresAt));
+						out.write(CONST_FILE_SEP);
+						out.write(entry.getKey().toString());
+
+						for (BigInteger factor: entry.getValue().factors) {
+							out.write(CONST_FILE_SEP);
+							out.write(factor.toString());
+						}
+
+						out.write(System.lineSeparator());
+					}
+				}
+			}
+		}
+
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Puts the entries saved to file by {@link FactorizationCache#save(File)}, keeping the time they expire at.
+	 * Expired entries are skipped, as are lines which are not well formed or whose factors do not multiply to n.
+	 * @return number of entries put.
+	 */
+	public int load (File file) throws IOException {
+		final long now = System.currentTimeMillis();
+		String line;
+		String[] fields;
+		List<BigInteger> factors;
+		int result = 0;
+
+		try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.US_ASCII)) {
+			while ((line = in.readLine()) != null) {
+				fields = line.trim().split(CONST_FILE_SEP);
+
+				if (fields.length < 2) {
+					continue;
+				}
+
+				try {
+					final long expiresAt = Long.parseLong(fields[0]);
+					final BigInteger n = new BigInteger(fields[1]);
+
+					factors = new ArrayList<>(fields.length - 2);
+					for (int i = 2; i < fields.length; i++) {
+						factors.add(new BigInteger(fields[i]));
+					}
+
+					if (expiresAt > now && BigMath.multiply(factors).equals(n)) {
+						put(n, factors, expiresAt);
+						result++;
+					}
+				} catch (NumberFormatException e) {
+					//Skip the line
+				}
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	public String toString () {
+		return String.format(
+				"%s, %d entries, %d hits, %d misses",
+				FactorizationCache.class.getSimpleName(), size(), getHits(), getMisses()
+		);
+	}
+
+	private Shard shardOf (BigInteger n) {
+		//The hash of a small n is n itself: mix its bits, otherwise odd numbers would never reach even shards
+		int hash = n.hashCode() * 0x9E3779B9;
+
+		hash ^= hash >>> 16;
+
+		return shards[hash & (shards.length - 1)];
+	}
+
+	private static class Factorization {
+
+		private final List<BigInteger> factors;
+		private final long expiresAt;
+
+		Factorization (List<BigInteger> factors, long expiresAt) {
+			this.factors = factors;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+	/**
+	 * An access ordered map evicting its least recently used entry once it holds more than capacity entries.
+	 */
+	private static class Shard extends LinkedHashMap<BigInteger, Factorization> {
+
+		private final int capacity;
+
+		Shard (int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<BigInteger, Factorization> eldest) {
+			return size() > capacity;
+		}
+
+	}
+
+}
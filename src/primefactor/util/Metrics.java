@@ -0,0 +1,280 @@
+package primefactor.util;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of the hot paths of the servers and clients, shared by the whole JVM and cheap enough to be
+ * always on.<br>
+ * Metrics are created on first use and looked up by name, which callers on a hot path should do once and keep the
+ * result of. None of them takes a lock when updated. The values can be read as text or JSON, either directly or over
+ * JMX once {@link Metrics#registerMBean()} was called, under the name CONST_MBEAN_NAME.
+ */
+public class Metrics implements MetricsMBean {
+
+	public static final String CONST_MBEAN_NAME = "primefactor:type=Metrics";
+
+	private static final Metrics instance = new Metrics();
+
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	private volatile long resetNanos = System.nanoTime();
+
+	private Metrics () {
+	}
+
+	public static Metrics getInstance () {
+		return instance;
+	}
+
+	/**
+	 * @return the counter named name, created if needed.
+	 */
+	public static LongAdder counter (String name) {
+		return instance.counters.computeIfAbsent(name, key -> new LongAdder());
+	}
+
+	/**
+	 * @return the histogram named name, created if needed.
+	 */
+	public static Histogram histogram (String name) {
+		return instance.histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+
+	/**
+	 * Registers the instance with the platform MBean server, unless it already is.
+	 * @return false if registration failed, in which case metrics are still collected.
+	 */
+	public static boolean registerMBean () {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(CONST_MBEAN_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			//Registered by another server running in this JVM
+		} catch (JMException e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public long getElapsedMillis () {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resetNanos);
+	}
+
+	/**
+	 * Lists every counter along with its rate per second since the last reset, then every histogram, one per line in
+	 * name order.
+	 */
+	@Override
+	public String getText () {
+		final StringBuilder result = new StringBuilder();
+		final double seconds = Math.max(1, getElapsedMillis()) / 1000.0;
+
+		for (Map.Entry<String, LongAdder> counter: new TreeMap<>(counters).entrySet()) {
+			final long value = counter.getValue().sum();
+
+			result.append(String.format("%s %d (%.1f/s)\n", counter.getKey(), value, value / seconds));
+		}
+
+		for (Map.Entry<String, Histogram> histogram: new TreeMap<>(histograms).entrySet()) {
+			result.append(String.format("%s %s\n", histogram.getKey(), histogram.getValue()));
+		}
+
+		return result.toString();
+	}
+
+	@Override
+	public String getJson () {
+		final StringBuilder result = new StringBuilder();
+		String separator = "";
+
+		result.append(String.format("{\"elapsedMillis\":%d,\"counters\":{", getElapsedMillis()));
+
+		for (Map.Entry<String, LongAdder> counter: new TreeMap<>(counters).entrySet()) {
+			result.append(String.format("%s\"%s\":%d", separator, counter.getKey(), counter.getValue().sum()));
+			separator = ",";
+		}
+
+		result.append("},\"histograms\":{");
+		separator = "";
+
+		for (Map.Entry<String, Histogram> histogram: new TreeMap<>(histograms).entrySet()) {
+			result.append(String.format("%s\"%s\":%s", separator, histogram.getKey(), histogram.getValue().toJson()));
+			separator = ",";
+		}
+
+		return result.append("}}").toString();
+	}
+
+	@Override
+	public long getCounter (String name) {
+		final LongAdder counter = counters.get(name);
+
+		return counter == null ? 0 : counter.sum();
+	}
+
+	/**
+	 * Zeroes every metric. Updates made meanwhile may be partly lost.
+	 */
+	@Override
+	public void reset () {
+		for (LongAdder counter: counters.values()) {
+			counter.reset();
+		}
+		for (Histogram histogram: histograms.values()) {
+			histogram.reset();
+		}
+
+		resetNanos = System.nanoTime();
+	}
+
+	@Override
+	public String toString () {
+		return getText();
+	}
+
+	/**
+	 * A histogram of non negative values, typically durations in nanoseconds, with a bounded relative error.<br>
+	 * Values below CONST_SUB_BUCKETS have a bucket each; larger ones are bucketed by their power of 2, each power being
+	 * split in CONST_SUB_BUCKETS linear buckets, so that any value is known within 1 / CONST_SUB_BUCKETS of itself.
+	 */
+	public static class Histogram {
+
+		/**
+		 * Number of buckets per power of 2, itself a power of 2.
+		 */
+		public static final int CONST_SUB_BUCKETS = 16;
+
+		private static final int CONST_SUB_BITS = Integer.numberOfTrailingZeros(CONST_SUB_BUCKETS);
+		private static final int CONST_BUCKETS = (Long.SIZE - CONST_SUB_BITS) * CONST_SUB_BUCKETS;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(CONST_BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		/**
+		 * @param value value to record, negative ones being taken as 0.
+		 */
+		public void record (long value) {
+			long current;
+
+			value = Math.max(0, value);
+
+			buckets.incrementAndGet(bucketOf(value));
+			count.increment();
+			sum.add(value);
+
+			while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+				//Another thread raised the maximum meanwhile, check against it
+			}
+		}
+
+		/**
+		 * Records the time elapsed since startNanos, as returned by {@link System#nanoTime()}.
+		 */
+		public void recordSince (long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		public long getCount () {
+			return count.sum();
+		}
+
+		public long getMax () {
+			return max.get();
+		}
+
+		public double getMean () {
+			final long count = getCount();
+
+			return count == 0 ? 0 : (double) sum.sum() / count;
+		}
+
+		/**
+		 * @param percentile in [0, 100].
+		 * @return the highest value of the bucket the given percentile of the values recorded fall into, or 0 if none
+		 * was recorded.
+		 */
+		public long getPercentile (double percentile) {
+			final long count = getCount();
+			final long rank = (long) Math.ceil(count * percentile / 100);
+			long seen = 0;
+
+			for (int bucket = 0; bucket < CONST_BUCKETS; bucket++) {
+				seen += buckets.get(bucket);
+
+				if (seen > 0 && seen >= rank) {
+					return Math.min(getMax(), highestValueOf(bucket));
+				}
+			}
+
+			return getMax();
+		}
+
+		void reset () {
+			for (int bucket = 0; bucket < CONST_BUCKETS; bucket++) {
+				buckets.set(bucket, 0);
+			}
+
+			count.reset();
+			sum.reset();
+			max.set(0);
+		}
+
+		static int bucketOf (long value) {
+			final int exponent;
+
+			if (value < CONST_SUB_BUCKETS) {
+				return (int) value;
+			}
+
+			exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+
+			//The CONST_SUB_BITS bits following the leading one select the linear bucket within the power of 2
+			return (exponent - CONST_SUB_BITS + 1) * CONST_SUB_BUCKETS +
+					(int) ((value >>> (exponent - CONST_SUB_BITS)) & (CONST_SUB_BUCKETS - 1));
+		}
+
+		static long highestValueOf (int bucket) {
+			final int shift;
+
+			if (bucket < CONST_SUB_BUCKETS) {
+				return bucket;
+			}
+
+			shift = bucket / CONST_SUB_BUCKETS - 1;
+
+			return ((long) (CONST_SUB_BUCKETS + bucket % CONST_SUB_BUCKETS + 1) << shift) - 1;
+		}
+
+		@Override
+		public String toString () {
+			return String.format(
+					"count=%d mean=%.0f p50=%d p90=%d p99=%d max=%d",
+					getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax()
+			);
+		}
+
+		String toJson () {
+			return String.format(
+					"{\"count\":%d,\"mean\":%.0f,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d}",
+					getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax()
+			);
+		}
+
+	}
+
+}
@@ -0,0 +1,24 @@
+package primefactor.util;
+
+/**
+ * The management interface of {@link Metrics}.
+ */
+public interface MetricsMBean {
+
+	/**
+	 * @return the number of milliseconds since the metrics were created or last reset.
+	 */
+	long getElapsedMillis ();
+
+	String getText ();
+
+	String getJson ();
+
+	/**
+	 * @return the value of the counter named name, or 0 if there is none.
+	 */
+	long getCounter (String name);
+
+	void reset ();
+
+}
@@ -0,0 +1,243 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Arithmetic modulo a fixed odd n on mutable residues, for loops running millions of steps against the same n, such
+ * as the iteration of {@link PollardRho}.<br>
+ * Residues are held in Montgomery form: x stands for x * R mod n, where R = 2^(32 * limbs) is the smallest power of
+ * 2^32 above n. A product then only takes multiplications and shifts rather than a division by n.<br>
+ * Residues are long[] arrays of {@link MontgomeryContext#getLimbs()} 32 bit words, least significant first, each in
+ * [0, 2^32), so that the product of two words plus two carries fits in an unsigned long. Operations write into a
+ * residue given by the caller, which may be one of their operands, and use a scratch array of the context: once
+ * residues are allocated, no operation allocates anything.<br>
+ * A context is thus <i>not</i> thread safe, each thread should use a context of its own.
+ */
+public class MontgomeryContext {
+
+	private static final long CONST_WORD_MASK = 0xFFFFFFFFL;
+
+	private final BigInteger n;
+	private final int limbs;
+	private final long[] modulus;
+	/**
+	 * -n^-1 mod 2^32.
+	 */
+	private final long inverse;
+	/**
+	 * Scratch array of limbs + 2 words for the products.
+	 */
+	private final long[] scratch;
+
+	/**
+	 * @param n odd modulus, must be > 1.
+	 */
+	public MontgomeryContext (BigInteger n) {
+		if (n.compareTo(BigInteger.ONE) <= 0 || !n.testBit(0)) {
+			throw new IllegalArgumentException(String.format("Parameter n has value %s, which is not odd and > 1", n));
+		}
+
+		this.n = n;
+		this.limbs = (n.bitLength() + Integer.SIZE - 1) / Integer.SIZE;
+		this.modulus = limbsOf(n, limbs);
+		this.inverse = -inverseOf(modulus[0]) & CONST_WORD_MASK;
+		this.scratch = new long[limbs + 2];
+	}
+
+	public BigInteger getModulus () {
+		return n;
+	}
+
+	/**
+	 * @return the number of 32 bit words of the residues of this context.
+	 */
+	public int getLimbs () {
+		return limbs;
+	}
+
+	/**
+	 * @return a new residue standing for 0.
+	 */
+	public long[] newResidue () {
+		return new long[limbs];
+	}
+
+	/**
+	 * @return a new residue standing for x mod n.
+	 */
+	public long[] toMontgomery (BigInteger x) {
+		return limbsOf(x.shiftLeft(Integer.SIZE * limbs).mod(n), limbs);
+	}
+
+	/**
+	 * @return the value in [0, n) a stands for.
+	 */
+	public BigInteger fromMontgomery (long[] a) {
+		return toBigInteger(a).multiply(BigInteger.ONE.shiftLeft(Integer.SIZE * limbs).modInverse(n)).mod(n);
+	}
+
+	/**
+	 * @return gcd(x, n), where x is the value a stands for. R being coprime with n, this is also the gcd of n with the
+	 * Montgomery form of x, which needs no conversion.
+	 */
+	public BigInteger gcd (long[] a) {
+		return toBigInteger(a).gcd(n);
+	}
+
+	public void copy (long[] source, long[] destination) {
+		System.arraycopy(source, 0, destination, 0, limbs);
+	}
+
+	/**
+	 * Sets result to a * b mod n, by Montgomery multiplication interleaving the product with the reduction (the Coarsely
+	 * Integrated Operand Scanning method).
+	 */
+	public void multiply (long[] a, long[] b, long[] result) {
+		final long[] t = scratch;
+		long carry, sum, m;
+
+		Arrays.fill(t, 0);
+
+		for (int i = 0; i < limbs; i++) {
+			carry = 0;
+
+			for (int j = 0; j < limbs; j++) {
+				sum = t[j] + a[j] * b[i] + carry; //At most 2^64 - 1, unsigned
+				t[j] = sum & CONST_WORD_MASK;
+				carry = sum >>> Integer.SIZE;
+			}
+
+			sum = t[limbs] + carry;
+			t[limbs] = sum & CONST_WORD_MASK;
+			t[limbs + 1] = sum >>> Integer.SIZE;
+
+			//Add m * n so that the lowest word becomes 0, and shift it out
+			m = (t[0] * inverse) & CONST_WORD_MASK;
+			carry = (t[0] + m * modulus[0]) >>> Integer.SIZE;
+
+			for (int j = 1; j < limbs; j++) {
+				sum = t[j] + m * modulus[j] + carry;
+				t[j - 1] = sum & CONST_WORD_MASK;
+				carry = sum >>> Integer.SIZE;
+			}
+
+			sum = t[limbs] + carry;
+			t[limbs - 1] = sum & CONST_WORD_MASK;
+			t[limbs] = t[limbs + 1] + (sum >>> Integer.SIZE);
+		}
+
+		//t < 2n, a single subtraction brings it back to [0, n)
+		if (t[limbs] != 0 || compare(t, modulus) >= 0) {
+			subtractWords(t, modulus, t);
+		}
+
+		System.arraycopy(t, 0, result, 0, limbs);
+	}
+
+	/**
+	 * Sets result to a + b mod n.
+	 */
+	public void add (long[] a, long[] b, long[] result) {
+		long sum, carry = 0;
+
+		for (int i = 0; i < limbs; i++) {
+			sum = a[i] + b[i] + carry;
+			result[i] = sum & CONST_WORD_MASK;
+			carry = sum >>> Integer.SIZE;
+		}
+
+		if (carry != 0 || compare(result, modulus) >= 0) {
+			subtractWords(result, modulus, result);
+		}
+	}
+
+	/**
+	 * Sets result to a - b mod n.
+	 */
+	public void subtract (long[] a, long[] b, long[] result) {
+		if (subtractWords(a, b, result) != 0) {
+			addModulus(result);
+		}
+	}
+
+	/**
+	 * Subtracts the first limbs words of b from those of a, without reduction.
+	 * @return the borrow out of the most significant word, 0 or 1.
+	 */
+	private long subtractWords (long[] a, long[] b, long[] result) {
+		long difference, borrow = 0;
+
+		for (int i = 0; i < limbs; i++) {
+			difference = a[i] - b[i] - borrow;
+			result[i] = difference & CONST_WORD_MASK;
+			borrow = difference >>> (Long.SIZE - 1);
+		}
+
+		return borrow;
+	}
+
+	private void addModulus (long[] a) {
+		long sum, carry = 0;
+
+		for (int i = 0; i < limbs; i++) {
+			sum = a[i] + modulus[i] + carry;
+			a[i] = sum & CONST_WORD_MASK;
+			carry = sum >>> Integer.SIZE;
+		}
+	}
+
+	/**
+	 * Compares the first limbs words of a and b, as unsigned numbers.
+	 */
+	private int compare (long[] a, long[] b) {
+		for (int i = limbs - 1; i >= 0; i--) {
+			if (a[i] != b[i]) {
+				return a[i] < b[i] ? -1 : 1; //Words are in [0, 2^32), signed comparison is fine
+			}
+		}
+
+		return 0;
+	}
+
+	private BigInteger toBigInteger (long[] a) {
+		final byte[] bytes = new byte[limbs * Integer.BYTES + 1]; //Leading 0 byte for the sign
+
+		for (int i = 0, offset = bytes.length - 1; i < limbs; i++) {
+			for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+				bytes[offset--] = (byte) (a[i] >>> shift);
+			}
+		}
+
+		return new BigInteger(bytes);
+	}
+
+	/**
+	 * @return the limbs least significant 32 bit words of the non negative BigInteger x.
+	 */
+	private static long[] limbsOf (BigInteger x, int limbs) {
+		final byte[] bytes = x.toByteArray();
+		final long[] result = new long[limbs];
+
+		for (int i = 0; i < bytes.length && i / Integer.BYTES < limbs; i++) {
+			result[i / Integer.BYTES] |= (bytes[bytes.length - 1 - i] & 0xFFL) << (Byte.SIZE * (i % Integer.BYTES));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the inverse of the odd word mod 2^32, by Newton's iteration: each step doubles the number of correct
+	 * low bits, starting from the 3 bits word is its own inverse to.
+	 */
+	private static long inverseOf (long word) {
+		long result = word;
+
+		for (int i = 0; i < 4; i++) {
+			result *= 2 - word * result;
+		}
+
+		return result & CONST_WORD_MASK;
+	}
+
+}
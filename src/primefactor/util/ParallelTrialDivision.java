@@ -0,0 +1,151 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Trial division of n over a range [low, high] split recursively across the threads of a {@link ForkJoinPool}, as
+ * done by {@link BigMath#primeFactorsOf(BigInteger, BigInteger, BigInteger, int, BooleanSupplier, ForkJoinPool)}.<br>
+ * Leaves of the split divide the cofactor of n left when they start, which shrinks as the factors found by the other
+ * leaves are divided out of it. Once the cofactor is 1 or prime the search is over, and the leaves still running or
+ * waiting to run stop.
+ */
+class ParallelTrialDivision {
+
+	/**
+	 * Minimum number of divisors a leaf tries, below which splitting costs more than it saves.
+	 */
+	static final long CONST_MIN_LEAF_WIDTH = 1 << 16;
+	/**
+	 * Number of leaves per thread of the pool, so that threads which are done early can steal the work left.
+	 */
+	static final int CONST_LEAVES_PER_THREAD = 8;
+
+	private final BigInteger low, high;
+	private final int primeCertainty;
+	private final BooleanSupplier cancelled;
+	private final BigInteger leafWidth;
+
+	private BigInteger cofactor;
+	private boolean stopped;
+
+	private ParallelTrialDivision (BigInteger n, BigInteger low, BigInteger high, int primeCertainty, BooleanSupplier cancelled, int parallelism) {
+		final BigInteger width = high.subtract(low).add(BigInteger.ONE);
+
+		this.low = low;
+		this.high = high;
+		this.primeCertainty = primeCertainty;
+		this.cancelled = cancelled;
+		this.leafWidth = width.divide(BigInteger.valueOf((long) parallelism * CONST_LEAVES_PER_THREAD))
+				.max(BigInteger.valueOf(CONST_MIN_LEAF_WIDTH));
+		this.cofactor = n;
+	}
+
+	/**
+	 * @see BigMath#primeFactorsOf(BigInteger, BigInteger, BigInteger, int, BooleanSupplier, ForkJoinPool)
+	 */
+	static List<BigInteger> primeFactorsOf (BigInteger n, BigInteger low, BigInteger high, int primeCertainty, BooleanSupplier cancelled, ForkJoinPool pool) {
+		final ParallelTrialDivision search = new ParallelTrialDivision(
+				n, low, high, primeCertainty, cancelled, pool.getParallelism()
+		);
+		//n may be prime already, in which case there is nothing to split
+		final List<BigInteger> result = search.merge(new LinkedList<>());
+
+		result.addAll(pool.invoke(search.new Split(low, high)));
+
+		return result;
+	}
+
+	/**
+	 * @return the cofactor of n left, or null if the search is over.
+	 */
+	private synchronized BigInteger cofactor () {
+		return isStopped() ? null : cofactor;
+	}
+
+	/**
+	 * Checks cancelled under the lock of this search, so that a BooleanSupplier which is not thread safe can be
+	 * shared by the leaves.
+	 */
+	private synchronized boolean isStopped () {
+		if (!stopped && cancelled.getAsBoolean()) {
+			stopped = true;
+		}
+
+		return stopped;
+	}
+
+	/**
+	 * Divides the cofactor of n by the factors found by a leaf.
+	 * @return the factors which were divided out, some of them possibly being found by another leaf meanwhile.
+	 */
+	private synchronized List<BigInteger> merge (List<BigInteger> found) {
+		final List<BigInteger> result = new LinkedList<>();
+
+		for (BigInteger factor: found) {
+			if (cofactor.remainder(factor).signum() == 0) {
+				cofactor = cofactor.divide(factor);
+				result.add(factor);
+			}
+		}
+
+		if (cofactor.equals(BigInteger.ONE) || cofactor.compareTo(low) < 0) {
+			stopped = true;
+		} else if (cofactor.isProbablePrime(primeCertainty)) {
+			//The cofactor has no prime factor but itself, whichever leaf covers it need not reach it
+			if (cofactor.compareTo(high) <= 0) {
+				result.add(cofactor);
+				cofactor = BigInteger.ONE;
+			}
+			stopped = true;
+		}
+
+		return result;
+	}
+
+	/**
+	 * The part [low, high] of the range searched, split in two halves as long as it is wider than a leaf.
+	 */
+	private class Split extends RecursiveTask<List<BigInteger>> {
+
+		private final BigInteger low, high;
+
+		Split (BigInteger low, BigInteger high) {
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected List<BigInteger> compute () {
+			final BigInteger middle;
+			final Split left, right;
+			final List<BigInteger> result;
+			final BigInteger n = cofactor();
+
+			if (n == null) {
+				return new LinkedList<>();
+			}
+
+			if (high.subtract(low).compareTo(leafWidth) < 0) {
+				return merge(BigMath.primeFactorsOf(n, low, high, primeCertainty, ParallelTrialDivision.this::isStopped));
+			}
+
+			middle = low.add(high).shiftRight(1);
+			left = new Split(low, middle);
+			right = new Split(middle.add(BigInteger.ONE), high);
+
+			//The left half holds the smallest divisors, which are the likeliest to shrink the cofactor: run it first
+			right.fork();
+			result = left.compute();
+			result.addAll(right.join());
+
+			return result;
+		}
+
+	}
+
+}
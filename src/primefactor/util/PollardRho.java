@@ -0,0 +1,169 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Brent's variant of Pollard's rho factoring algorithm.<br>
+ * The running time depends on the square root of the smallest prime factor of n rather than on sqrt(n), which makes
+ * it suitable for numbers far too large for trial division, as long as they have a factor of moderate size.<br>
+ * Small factors are first removed by trial division; the cofactor is then split with the iteration x -> x^2 + c mod
+ * n, where c and the starting point are drawn from a generator seeded by the constructor, so that instances built
+ * with different seeds follow different sequences.
+ */
+public class PollardRho implements FactoringAlgorithm {
+
+	public static final int CONST_PRIME_CERTAINTY = 20;
+	/**
+	 * Primes up to this bound are removed by trial division before the rho iteration starts.
+	 */
+	public static final long CONST_TRIAL_BOUND = 1 << 12;
+	/**
+	 * Number of |x - y| terms multiplied together before computing a gcd with n.
+	 */
+	public static final int CONST_GCD_BATCH = 128;
+
+	private final Random random;
+
+	public PollardRho (long seed) {
+		random = new Random(seed);
+	}
+
+	@Override
+	public List<BigInteger> primeFactorsOf (BigInteger n, BooleanSupplier cancelled) {
+		final List<BigInteger> result;
+		final Deque<BigInteger> composites = new ArrayDeque<>();
+		BigInteger cofactor, divisor;
+
+		if (n.signum() < 1) {
+			throw new IllegalArgumentException(String.format("Parameter n has value %s < 1", n));
+		}
+		if (n.equals(BigInteger.ONE)) {
+			return new LinkedList<>();
+		}
+
+		result = BigMath.primeFactorsOf(n, new SegmentedSieve(2, CONST_TRIAL_BOUND), CONST_PRIME_CERTAINTY);
+		cofactor = n.divide(BigMath.multiply(result));
+
+		if (cofactor.compareTo(BigInteger.ONE) > 0) {
+			composites.push(cofactor);
+		}
+
+		while (!composites.isEmpty()) {
+			cofactor = composites.pop();
+
+			if (cofactor.isProbablePrime(CONST_PRIME_CERTAINTY)) {
+				result.add(cofactor);
+			} else {
+				divisor = divisorOf(cofactor, cancelled);
+
+				if (divisor == null) {
+					break; //Cancelled, the composites left are dropped
+				}
+
+				composites.push(divisor);
+				composites.push(cofactor.divide(divisor));
+			}
+		}
+
+		Collections.sort(result);
+
+		return result;
+	}
+
+	/**
+	 * @param n odd composite number with no prime factors below CONST_TRIAL_BOUND.
+	 * @return a non trivial divisor of n, or null if cancelled returned true first.
+	 */
+	BigInteger divisorOf (BigInteger n, BooleanSupplier cancelled) {
+		BigInteger divisor;
+
+		do {
+			divisor = brent(n, random(n), random(n), cancelled);
+		} while (divisor != null && divisor.equals(n)); //The sequence cycled modulo n itself, retry with another polynomial
+
+		return divisor;
+	}
+
+	/**
+	 * Runs the iteration on residues of a {@link MontgomeryContext}, so that its steps allocate nothing.
+	 * @param cancelled checked once per gcd.
+	 * @return a divisor of n greater than 1, which may be n itself if the attempt failed, or null if cancelled.
+	 */
+	private static BigInteger brent (BigInteger n, BigInteger c, BigInteger y, BooleanSupplier cancelled) {
+		final MontgomeryContext context = new MontgomeryContext(n);
+		final long[] constant = context.toMontgomery(c), current = context.toMontgomery(y);
+		final long[] x = context.newResidue(), saved = context.newResidue(), difference = context.newResidue();
+		final long[] q = context.toMontgomery(BigInteger.ONE);
+		BigInteger g;
+		long r = 1, k;
+
+		do {
+			context.copy(current, x);
+
+			for (long i = 0; i < r; i++) {
+				next(context, current, constant);
+			}
+
+			k = 0;
+
+			do {
+				context.copy(current, saved);
+
+				for (long i = 0; i < Math.min(CONST_GCD_BATCH, r - k); i++) {
+					next(context, current, constant);
+					context.subtract(x, current, difference);
+					context.multiply(q, difference, q);
+				}
+
+				if (cancelled.getAsBoolean()) {
+					return null;
+				}
+
+				g = context.gcd(q);
+				k += CONST_GCD_BATCH;
+			} while (k < r && g.equals(BigInteger.ONE));
+
+			r *= 2;
+		} while (g.equals(BigInteger.ONE));
+
+		if (g.equals(n)) {
+			//The batched product hit 0 mod n: backtrack one step at a time from the start of the last batch
+			do {
+				next(context, saved, constant);
+				context.subtract(x, saved, difference);
+				g = context.gcd(difference);
+			} while (g.equals(BigInteger.ONE));
+		}
+
+		return g;
+	}
+
+	/**
+	 * Sets x to x^2 + c mod n.
+	 */
+	private static void next (MontgomeryContext context, long[] x, long[] c) {
+		context.multiply(x, x, x);
+		context.add(x, c, x);
+	}
+
+	/**
+	 * @return a pseudo random BigInteger r such that 1 <= r < n.
+	 */
+	private BigInteger random (BigInteger n) {
+		BigInteger r;
+
+		do {
+			r = new BigInteger(n.bitLength(), random);
+		} while (r.signum() == 0 || r.compareTo(n) >= 0);
+
+		return r;
+	}
+
+}
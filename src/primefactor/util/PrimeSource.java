@@ -0,0 +1,34 @@
+package primefactor.util;
+
+import java.io.IOException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A source of the primes up to some bound, which trial division can draw its divisors from instead of sieving them.
+ * See {@link BigMath#setPrimeSource(PrimeSource)}.
+ */
+public interface PrimeSource {
+
+	/**
+	 * @return the largest value this source can stream primes up to.
+	 */
+	long getBound ();
+
+	/**
+	 * @param low minimum value a prime can take, must be >= 1.
+	 * @param high maximum value a prime can take, must be <= {@link PrimeSource#getBound()}.
+	 * @return the primes p such that low <= p <= high, in increasing order.
+	 */
+	PrimitiveIterator.OfLong primes (long low, long high);
+
+	/**
+	 * @return the {@link PrimeStore} named by the system properties if any, else the {@link PrimeTable} named by them if
+	 * any, else null.
+	 */
+	static PrimeSource fromSystemProperties () throws IOException {
+		final PrimeStore store = PrimeStore.fromSystemProperties();
+
+		return store != null ? store : PrimeTable.fromSystemProperties();
+	}
+
+}
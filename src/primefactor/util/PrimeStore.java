@@ -0,0 +1,372 @@
+package primefactor.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A store of the primes up to bounds too large for the heap, held in a directory of segment files which are
+ * memory-mapped read-only on demand.<br>
+ * Segment k covers the values in [k * CONST_SEGMENT_SPAN, (k + 1) * CONST_SEGMENT_SPAN), as a bitmap of its odd values,
+ * bit i standing for k * CONST_SEGMENT_SPAN + 2i + 1. The segment holding a value is thus found by a division, and its
+ * primes are streamed straight from the mapping. Segments are sieved in increasing order by a background job, each of
+ * them being written to a temporary file first, so that a store is usable while it is being filled: it covers the
+ * values of the segments filled so far, starting from 0.<br>
+ * At most CONST_MAPPED_SEGMENTS segments are kept mapped by a store, the least recently used one being dropped first.
+ */
+public class PrimeStore implements PrimeSource, Closeable {
+
+	public static final long CONST_SEGMENT_SPAN = 1L << 25;
+	public static final int CONST_MAPPED_SEGMENTS = 64;
+	/**
+	 * System properties naming the directory of the store servers use, if any, and the bound it is filled up to.
+	 */
+	public static final String CONST_PROP_DIRECTORY = "primefactor.primes.store";
+	public static final String CONST_PROP_BOUND = "primefactor.primes.store.bound";
+	public static final long CONST_DEF_BOUND = 1L << 34;
+	/**
+	 * Largest bound a store can be filled up to: segments are indexed by ints, from 0 to Integer.MAX_VALUE - 1.
+	 */
+	public static final long CONST_MAX_BOUND = Math.min(
+			SegmentedSieve.CONST_MAX_HIGH, Integer.MAX_VALUE * CONST_SEGMENT_SPAN - 1
+	);
+
+	private static final int CONST_SEGMENT_BYTES = (int) (CONST_SEGMENT_SPAN / 2 / Byte.SIZE);
+	private static final Pattern CONST_SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.bits");
+
+	private final File directory;
+	/**
+	 * Segments held by the directory, which may not be contiguous when a fill job was stopped early.
+	 */
+	private final BitSet filled = new BitSet();
+	private final LinkedHashMap<Integer, MappedByteBuffer> mapped = new LinkedHashMap<Integer, MappedByteBuffer>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<Integer, MappedByteBuffer> eldest) {
+			return size() > CONST_MAPPED_SEGMENTS; //The mapping is released once garbage collected
+		}
+	};
+	private final ExecutorService filler = Executors.newSingleThreadExecutor(
+			ThreadPools.daemonThreadFactory(PrimeStore.class.getSimpleName())
+	);
+
+	/**
+	 * Number of segments filled from 0 on, without gaps.
+	 */
+	private volatile int contiguous;
+	private volatile boolean closed;
+
+	/**
+	 * Opens the store held in directory, which is created if needed. The segments already filled are usable at once.
+	 */
+	public PrimeStore (File directory) throws IOException {
+		final File[] files;
+		Matcher matcher;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException(String.format("Cannot create the directory %s", directory));
+		}
+
+		this.directory = directory;
+		files = directory.listFiles();
+
+		if (files != null) {
+			for (File file: files) {
+				matcher = CONST_SEGMENT_NAME.matcher(file.getName());
+
+				//A segment past the last one a store can hold was not written by one, and is ignored
+				if (matcher.matches() && file.length() == CONST_SEGMENT_BYTES &&
+						matcher.group(1).length() <= 10 && Long.parseLong(matcher.group(1)) < Integer.MAX_VALUE) {
+					filled.set(Integer.parseInt(matcher.group(1)));
+				}
+			}
+		}
+
+		contiguous = filled.nextClearBit(0);
+	}
+
+	/**
+	 * @return the store named by the system property CONST_PROP_DIRECTORY, filled in the background up to the bound of
+	 * CONST_PROP_BOUND, or CONST_DEF_BOUND; null if the property is not set.
+	 * @throws IllegalArgumentException if the bound of CONST_PROP_BOUND is > CONST_MAX_BOUND.
+	 */
+	public static PrimeStore fromSystemProperties () throws IOException {
+		final String path = System.getProperty(CONST_PROP_DIRECTORY);
+		final PrimeStore result;
+
+		if (path == null) {
+			return null;
+		}
+
+		result = new PrimeStore(new File(path));
+		result.fillAsync(Long.getLong(CONST_PROP_BOUND, CONST_DEF_BOUND));
+
+		return result;
+	}
+
+	/**
+	 * @return the largest value the segments filled from 0 on cover, -1 if none is.
+	 */
+	@Override
+	public long getBound () {
+		return contiguous * CONST_SEGMENT_SPAN - 1;
+	}
+
+	/**
+	 * Sieves the segments up to the one holding high which are not filled yet, in increasing order, in a background
+	 * thread. Each of them is usable as soon as it is written.
+	 * @param high must be <= CONST_MAX_BOUND.
+	 * @return a future completed once all of them are filled, or completed exceptionally if one could not be written.
+	 */
+	public CompletableFuture<Void> fillAsync (final long high) {
+		checkBound(high);
+
+		return CompletableFuture.runAsync(() -> {
+			try {
+				fill(high);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}, filler);
+	}
+
+	/**
+	 * The synchronous counterpart of {@link PrimeStore#fillAsync(long)}, which stops early once the store is closed.
+	 */
+	public void fill (long high) throws IOException {
+		final int last;
+
+		checkBound(high);
+		last = segmentOf(high);
+
+		for (int segment = 0; segment <= last && !closed; segment++) {
+			if (!isFilled(segment)) {
+				write(segment, sieve(segment));
+			}
+		}
+	}
+
+	@Override
+	public PrimitiveIterator.OfLong primes (long low, long high) {
+		if (low < 1 || high > getBound()) {
+			throw new IllegalArgumentException(
+					String.format(
+							"low and high parameters are not such that 1 <= low (%d), high (%d) <= %d",
+							low, high, getBound()
+					)
+			);
+		}
+
+		return new Primes(low, high);
+	}
+
+	/**
+	 * Stops the fill job in progress, if any, after the segment it is sieving.
+	 */
+	@Override
+	public void close () {
+		closed = true;
+		filler.shutdown();
+
+		synchronized (mapped) {
+			mapped.clear();
+		}
+	}
+
+	@Override
+	public String toString () {
+		return String.format(
+				"%s, %s, primes up to %d, %d segments", PrimeStore.class.getSimpleName(), directory, getBound(), filledCount()
+		);
+	}
+
+	private synchronized boolean isFilled (int segment) {
+		return filled.get(segment);
+	}
+
+	private synchronized int filledCount () {
+		return filled.cardinality();
+	}
+
+	private static void checkBound (long high) {
+		if (high > CONST_MAX_BOUND) {
+			throw new IllegalArgumentException(
+					String.format("Parameter high has value %d, which is not <= %d", high, CONST_MAX_BOUND)
+			);
+		}
+	}
+
+	/**
+	 * @param value must be <= CONST_MAX_BOUND, so that the index fits in an int.
+	 */
+	private static int segmentOf (long value) {
+		return (int) (value / CONST_SEGMENT_SPAN);
+	}
+
+	private File fileOf (int segment) {
+		return new File(directory, String.format("segment-%d.bits", segment));
+	}
+
+	/**
+	 * @return the bitmap of the odd primes of segment.
+	 */
+	private static long[] sieve (int segment) {
+		final long base = segment * CONST_SEGMENT_SPAN;
+		final long[] result = new long[CONST_SEGMENT_BYTES / Long.BYTES];
+		final SegmentedSieve primes = new SegmentedSieve(Math.max(3, base), base + CONST_SEGMENT_SPAN - 1);
+		long bit;
+
+		while (primes.hasNext()) {
+			bit = (primes.nextLong() - base) >>> 1;
+			result[(int) (bit >>> 6)] |= 1L << bit;
+		}
+
+		return result;
+	}
+
+	private void write (int segment, long[] bits) throws IOException {
+		final File file = fileOf(segment);
+		final File temporary = new File(file.getPath() + ".tmp");
+		final ByteBuffer buffer = ByteBuffer.allocate(CONST_SEGMENT_BYTES);
+
+		buffer.asLongBuffer().put(bits);
+
+		try (FileChannel channel = FileChannel.open(
+				temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+		)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		synchronized (this) {
+			filled.set(segment);
+			contiguous = filled.nextClearBit(0);
+		}
+	}
+
+	private MappedByteBuffer map (int segment) {
+		MappedByteBuffer result;
+
+		synchronized (mapped) {
+			result = mapped.get(segment);
+
+			if (result == null) {
+				try (FileChannel channel = FileChannel.open(fileOf(segment).toPath(), StandardOpenOption.READ)) {
+					result = channel.map(FileChannel.MapMode.READ_ONLY, 0, CONST_SEGMENT_BYTES);
+				} catch (IOException e) {
+					throw new IllegalStateException(String.format("Segment %d of %s cannot be read", segment, directory), e);
+				}
+
+				mapped.put(segment, result);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Scans the bitmaps of the segments [low, high] spans, reading their words straight from the mappings.
+	 */
+	private class Primes implements PrimitiveIterator.OfLong {
+
+		private final long high;
+		private int segment;
+		private MappedByteBuffer bits;
+		/**
+		 * Index of the next bit of the current segment to inspect.
+		 */
+		private long cursor;
+		private long next;
+		private boolean hasNext;
+
+		Primes (long low, long high) {
+			this.high = high;
+			this.segment = segmentOf(low);
+			this.cursor = (low - segment * CONST_SEGMENT_SPAN) >>> 1;
+
+			if (low > high) {
+				return;
+			}
+
+			bits = map(segment);
+
+			if (low <= 2 && 2 <= high) {
+				next = 2;
+				hasNext = true;
+			} else {
+				advance();
+			}
+		}
+
+		@Override
+		public boolean hasNext () {
+			return hasNext;
+		}
+
+		@Override
+		public long nextLong () {
+			final long result;
+
+			if (!hasNext) {
+				throw new NoSuchElementException();
+			}
+
+			result = next;
+			advance();
+
+			return result;
+		}
+
+		private void advance () {
+			final long segmentBits = CONST_SEGMENT_SPAN / 2;
+			long word, unmarked;
+
+			hasNext = false;
+
+			while (true) {
+				while (cursor < segmentBits) {
+					word = cursor >>> 6;
+					unmarked = bits.getLong((int) (word * Long.BYTES)) & (-1L << (cursor & 63));
+
+					if (unmarked != 0) {
+						cursor = (word << 6) + Long.numberOfTrailingZeros(unmarked);
+						next = segment * CONST_SEGMENT_SPAN + 2 * cursor + 1;
+						cursor++;
+						hasNext = next <= high;
+
+						return;
+					}
+
+					cursor = (word + 1) << 6;
+				}
+
+				if ((segment + 1) * CONST_SEGMENT_SPAN > high) {
+					return;
+				}
+
+				bits = map(++segment);
+				cursor = 0;
+			}
+		}
+
+	}
+
+}
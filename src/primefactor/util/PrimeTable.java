@@ -0,0 +1,335 @@
+package primefactor.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A precomputed table of the primes up to a bound, held in a file which is memory-mapped read-only: every server of
+ * the process shares the same mapping, and every process of the host the same pages of the file.<br>
+ * The file holds a header, followed by the odd primes delta-encoded, and by a sparse index of them. Odd primes being
+ * apart by an even gap, each one is stored as half the gap from the previous one in a single byte, or, for the rare
+ * gaps of more than 510, as a 0 byte followed by the half gap on two bytes. The index holds every
+ * CONST_INDEX_STRIDE-th prime along with the offset of the following one, so that streaming from any low only decodes
+ * a few thousand bytes before reaching it.
+ */
+public class PrimeTable implements PrimeSource {
+
+	public static final int CONST_MAGIC = 0x5052544C; //"PRTL"
+	public static final int CONST_VERSION = 1;
+	public static final long CONST_DEF_BOUND = 1L << 32;
+	/**
+	 * Largest bound a table can be built for, so that its primes fit in a single mapping.
+	 */
+	public static final long CONST_MAX_BOUND = 1L << 34;
+	public static final int CONST_INDEX_STRIDE = 4096;
+	/**
+	 * System properties naming the file of the table servers use, if any, and the bound it is built for if missing.
+	 */
+	public static final String CONST_PROP_FILE = "primefactor.primes.table";
+	public static final String CONST_PROP_BOUND = "primefactor.primes.bound";
+
+	/**
+	 * Magic, version, bound, number of primes, offset of the index and number of index entries.
+	 */
+	private static final int CONST_HEADER_BYTES = 2 * Integer.BYTES + 3 * Long.BYTES + Integer.BYTES;
+	private static final int CONST_MAX_SHORT_HALF_GAP = 0xFF;
+
+	/**
+	 * The tables opened so far, by canonical path.
+	 */
+	private static final Map<String, PrimeTable> opened = new HashMap<>();
+
+	private final long bound;
+	private final long count;
+	private final MappedByteBuffer data;
+	/**
+	 * The prime every index entry starts from, 1 standing for the start of data, and the offset in data of the prime
+	 * following it.
+	 */
+	private final long[] indexPrimes;
+	private final int[] indexOffsets;
+
+	private PrimeTable (File file) throws IOException {
+		final MappedByteBuffer header;
+		final long indexOffset;
+		final int indexEntries;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			header = channel.map(FileChannel.MapMode.READ_ONLY, 0, CONST_HEADER_BYTES);
+
+			if (header.getInt() != CONST_MAGIC || header.getInt() != CONST_VERSION) {
+				throw new IOException(String.format("%s is not a prime table of version %d", file, CONST_VERSION));
+			}
+
+			this.bound = header.getLong();
+			this.count = header.getLong();
+			indexOffset = header.getLong();
+			indexEntries = header.getInt();
+
+			this.data = channel.map(FileChannel.MapMode.READ_ONLY, CONST_HEADER_BYTES, indexOffset - CONST_HEADER_BYTES);
+			this.indexPrimes = new long[indexEntries];
+			this.indexOffsets = new int[indexEntries];
+
+			final MappedByteBuffer index = channel.map(
+					FileChannel.MapMode.READ_ONLY, indexOffset, (long) indexEntries * (Long.BYTES + Integer.BYTES)
+			);
+
+			for (int i = 0; i < indexEntries; i++) {
+				indexPrimes[i] = index.getLong();
+				indexOffsets[i] = index.getInt();
+			}
+		}
+	}
+
+	/**
+	 * @return the table held in file, mapped the first time it is opened by this process only.
+	 */
+	public static PrimeTable open (File file) throws IOException {
+		final String path = file.getCanonicalPath();
+		PrimeTable result;
+
+		synchronized (opened) {
+			result = opened.get(path);
+
+			if (result == null) {
+				result = new PrimeTable(file);
+				opened.put(path, result);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Opens the table held in file, building it first if file does not exist or covers less than bound.
+	 */
+	public static PrimeTable openOrBuild (File file, long bound) throws IOException {
+		PrimeTable result = file.isFile() ? open(file) : null;
+
+		if (result == null || result.getBound() < bound) {
+			build(file, bound);
+
+			synchronized (opened) {
+				opened.remove(file.getCanonicalPath());
+			}
+			result = open(file);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the table named by the system property CONST_PROP_FILE, built up to the bound of CONST_PROP_BOUND, or
+	 * CONST_DEF_BOUND, if needed; null if the property is not set.
+	 */
+	public static PrimeTable fromSystemProperties () throws IOException {
+		final String path = System.getProperty(CONST_PROP_FILE);
+
+		if (path == null) {
+			return null;
+		}
+
+		return openOrBuild(new File(path), Long.getLong(CONST_PROP_BOUND, CONST_DEF_BOUND));
+	}
+
+	/**
+	 * Sieves the primes up to bound into file, replacing it at once once complete.
+	 * @param bound must be in [2, CONST_MAX_BOUND].
+	 */
+	public static void build (File file, long bound) throws IOException {
+		final File temporary = new File(file.getPath() + ".tmp");
+		final SegmentedSieve sieve;
+		long[] indexPrimes = new long[1024];
+		int[] indexOffsets = new int[1024];
+		int indexEntries = 1;
+		long previous = 1, prime, count = 0, halfGap;
+		int offset = 0;
+
+		if (bound < 2 || bound > CONST_MAX_BOUND) {
+			throw new IllegalArgumentException(
+					String.format("bound parameter (%d) is not such that 2 <= bound <= %d", bound, CONST_MAX_BOUND)
+			);
+		}
+
+		sieve = new SegmentedSieve(3, bound);
+		indexPrimes[0] = 1;
+		indexOffsets[0] = 0;
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			out.write(new byte[CONST_HEADER_BYTES]); //Written once the primes are counted
+
+			while (sieve.hasNext()) {
+				prime = sieve.nextLong();
+				halfGap = (prime - previous) / 2;
+
+				if (halfGap <= CONST_MAX_SHORT_HALF_GAP) {
+					out.writeByte((int) halfGap);
+					offset++;
+				} else {
+					out.writeByte(0);
+					out.writeShort((int) halfGap);
+					offset += 1 + Short.BYTES;
+				}
+
+				previous = prime;
+
+				if (++count % CONST_INDEX_STRIDE == 0) {
+					if (indexEntries == indexPrimes.length) {
+						indexPrimes = Arrays.copyOf(indexPrimes, indexEntries * 2);
+						indexOffsets = Arrays.copyOf(indexOffsets, indexEntries * 2);
+					}
+
+					indexPrimes[indexEntries] = prime;
+					indexOffsets[indexEntries++] = offset;
+				}
+			}
+
+			for (int i = 0; i < indexEntries; i++) {
+				out.writeLong(indexPrimes[i]);
+				out.writeInt(indexOffsets[i]);
+			}
+		}
+
+		try (RandomAccessFile out = new RandomAccessFile(temporary, "rw")) {
+			out.writeInt(CONST_MAGIC);
+			out.writeInt(CONST_VERSION);
+			out.writeLong(bound);
+			out.writeLong(count + 1); //2 is not stored
+			out.writeLong(CONST_HEADER_BYTES + (long) offset);
+			out.writeInt(indexEntries);
+		}
+
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public long getBound () {
+		return bound;
+	}
+
+	/**
+	 * @return the number of primes in the table.
+	 */
+	public long size () {
+		return count;
+	}
+
+	@Override
+	public PrimitiveIterator.OfLong primes (long low, long high) {
+		if (low < 1 || high > bound) {
+			throw new IllegalArgumentException(
+					String.format(
+							"low and high parameters are not such that 1 <= low (%d), high (%d) <= %d",
+							low, high, bound
+					)
+			);
+		}
+
+		return new Primes(low, high);
+	}
+
+	@Override
+	public String toString () {
+		return String.format(
+				"%s, %d primes up to %d, %d bytes", PrimeTable.class.getSimpleName(), count, bound, data.capacity()
+		);
+	}
+
+	/**
+	 * Decodes the primes of the table from the last index entry below low on.
+	 */
+	private class Primes implements PrimitiveIterator.OfLong {
+
+		private final long high;
+		private int offset;
+		private long next;
+		private boolean hasNext;
+
+		Primes (long low, long high) {
+			int entry = Arrays.binarySearch(indexPrimes, low);
+
+			this.high = high;
+
+			if (entry < 0) {
+				entry = -entry - 2; //The entry of the largest prime below low
+			}
+
+			offset = indexOffsets[entry];
+			next = indexPrimes[entry];
+
+			if (low <= 2 && 2 <= high) {
+				next = 2;
+				hasNext = true;
+				return;
+			}
+
+			if (next < low || next == 1) {
+				advance();
+
+				while (hasNext && next < low) {
+					advance();
+				}
+			} else {
+				hasNext = next <= high; //low is itself an indexed prime
+			}
+		}
+
+		@Override
+		public boolean hasNext () {
+			return hasNext;
+		}
+
+		@Override
+		public long nextLong () {
+			final long result;
+
+			if (!hasNext) {
+				throw new NoSuchElementException();
+			}
+
+			result = next;
+			advance();
+
+			return result;
+		}
+
+		private void advance () {
+			int halfGap;
+
+			if (next == 2) {
+				next = 1; //Odd primes are stored as gaps from 1 on
+			}
+
+			if (offset >= data.limit()) {
+				hasNext = false;
+				return;
+			}
+
+			halfGap = data.get(offset++) & 0xFF;
+
+			if (halfGap == 0) {
+				halfGap = data.getShort(offset) & 0xFFFF;
+				offset += Short.BYTES;
+			}
+
+			next += 2L * halfGap;
+			hasNext = next <= high;
+		}
+
+	}
+
+}
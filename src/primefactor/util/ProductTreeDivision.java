@@ -0,0 +1,146 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Trial division of a large n by blocks of candidates at once, as done by
+ * {@link BigMath#primeFactorsOfBatched(BigInteger, BigInteger, BigInteger, int, BooleanSupplier)}.<br>
+ * Each candidate would otherwise cost a full pass over the words of n. Instead, the candidates of a block are
+ * multiplied together along a product tree, so that the multiplications are balanced and run at the speed of
+ * Karatsuba's or Toom-Cook's; a single gcd of n with that product then tells whether any of them divides n. Only the
+ * rare blocks whose gcd is not 1 are looked into, by reducing the gcd, which is small, by each of their candidates.<br>
+ * A block is made CONST_BLOCK_BITS_RATIO times as long as n, which amortizes the gcd over enough candidates while
+ * keeping the product tree cheap.
+ */
+class ProductTreeDivision {
+
+	/**
+	 * Number of bits of the product of a block, relative to the bit length of n.
+	 */
+	static final int CONST_BLOCK_BITS_RATIO = 16;
+	/**
+	 * Bit length of n below which trial dividing by candidates fitting in an int, which never allocates, is faster.
+	 */
+	static final int CONST_MIN_BITS = 2048;
+
+	private static final LongAdder divisorsTried = Metrics.counter("bigmath.divisors");
+
+	private ProductTreeDivision () {
+	}
+
+	/**
+	 * @see BigMath#primeFactorsOfBatched(BigInteger, BigInteger, BigInteger, int, BooleanSupplier)
+	 */
+	static List<BigInteger> primeFactorsOf (BigInteger n, BigInteger low, BigInteger high, int primeCertainty, BooleanSupplier cancelled) {
+		final List<BigInteger> factors = new LinkedList<>();
+		final boolean fromTwo = low.compareTo(BigInteger.valueOf(2)) <= 0;
+		final Iterator<BigInteger> candidates;
+		BigInteger[] block = new BigInteger[64];
+		BigInteger bound, gcd, divisor;
+		boolean done = false;
+		long tried = 0, bits;
+		int size;
+
+		if (n.bitLength() < Long.SIZE - 1 ||
+				(n.bitLength() < CONST_MIN_BITS && high.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) <= 0)) {
+			return BigMath.primeFactorsOf(n, low, high, primeCertainty, cancelled);
+		}
+
+		candidates = high.bitLength() < Long.SIZE - 1 ?
+				bigIntegers(BigMath.candidates(n, low.longValue(), high.longValue())) :
+				new Wheel.OfBigInteger(low, high);
+		bound = fromTwo ? BigMath.sqrt(n) : n;
+
+		while (!done && candidates.hasNext() && !cancelled.getAsBoolean()) {
+			size = 0;
+			bits = 0;
+
+			//Fill a block up to the bound, as the product of the candidates past it cannot divide n
+			while (bits < (long) CONST_BLOCK_BITS_RATIO * n.bitLength() && candidates.hasNext()) {
+				divisor = candidates.next();
+
+				if (divisor.compareTo(bound) > 0) {
+					done = true;
+					break;
+				}
+
+				if (size == block.length) {
+					block = Arrays.copyOf(block, size * 2);
+				}
+
+				block[size++] = divisor;
+				bits += divisor.bitLength();
+			}
+
+			tried += size;
+
+			if (size == 0) {
+				continue;
+			}
+
+			gcd = n.gcd(product(block, 0, size));
+
+			if (gcd.equals(BigInteger.ONE)) {
+				continue;
+			}
+
+			//The wheel yields some composites, only those dividing n are worth a primality test
+			for (int i = 0; i < size; i++) {
+				if (gcd.remainder(block[i]).signum() == 0 && block[i].isProbablePrime(primeCertainty)) {
+					while (n.remainder(block[i]).signum() == 0) {
+						n = n.divide(block[i]);
+						factors.add(block[i]);
+					}
+				}
+			}
+
+			bound = fromTwo ? BigMath.sqrt(n) : n;
+		}
+
+		if (done && fromTwo && n.compareTo(BigInteger.ONE) > 0 && n.compareTo(high) <= 0) {
+			factors.add(n); //No prime up to sqrt(n) divides n, which is thus prime
+		}
+
+		divisorsTried.add(tried);
+
+		return factors;
+	}
+
+	/**
+	 * @return the product of block[from], ..., block[to - 1], multiplied pairwise so that both sides of every
+	 * multiplication have about the same length.
+	 */
+	static BigInteger product (BigInteger[] block, int from, int to) {
+		final int middle;
+
+		if (to - from == 1) {
+			return block[from];
+		}
+
+		middle = (from + to) >>> 1;
+
+		return product(block, from, middle).multiply(product(block, middle, to));
+	}
+
+	private static Iterator<BigInteger> bigIntegers (final PrimitiveIterator.OfLong candidates) {
+		return new Iterator<BigInteger>() {
+			@Override
+			public boolean hasNext () {
+				return candidates.hasNext();
+			}
+
+			@Override
+			public BigInteger next () {
+				return BigInteger.valueOf(candidates.nextLong());
+			}
+		};
+	}
+
+}
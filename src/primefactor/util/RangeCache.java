@@ -0,0 +1,369 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A cache of the prime factors of n found in ranges [low, high], as computed by
+ * {@link BigMath#primeFactorsOf(BigInteger, BigInteger, BigInteger, int)}, which can be used by many threads at once.
+ * <br>
+ * The ranges cached for the same n never overlap, and adjacent ones are merged: a range asked for is answered from all
+ * the cached ranges it overlaps, leaving gaps for the caller to compute and put back. The factors of a range are held
+ * in a compact byte encoding, and the least recently used ranges are evicted once their total size exceeds the
+ * capacity of the cache.
+ */
+public class RangeCache {
+
+	public static final long CONST_DEF_CAPACITY_BYTES = 16 * 1024 * 1024;
+	/**
+	 * Estimated number of bytes taken by a cached range besides its encoded factors.
+	 */
+	public static final int CONST_RANGE_OVERHEAD_BYTES = 128;
+
+	private final Map<BigInteger, NavigableMap<BigInteger, Entry>> ranges = new HashMap<>();
+	/**
+	 * All the cached ranges, in access order.
+	 */
+	private final LinkedHashMap<Entry, Entry> usage = new LinkedHashMap<>(16, 0.75f, true);
+	private final long capacityBytes;
+
+	private long bytes;
+	private long hits, misses;
+
+	public RangeCache () {
+		this(CONST_DEF_CAPACITY_BYTES);
+	}
+
+	/**
+	 * @param capacityBytes number of bytes the cached ranges can take at most, must be > 0.
+	 */
+	public RangeCache (long capacityBytes) {
+		if (capacityBytes <= 0) {
+			throw new IllegalArgumentException("capacityBytes parameter must be greater than 0");
+		}
+
+		this.capacityBytes = capacityBytes;
+	}
+
+	/**
+	 * @return the prime factors of n in [low, high] held by the cached ranges, and the gaps of [low, high] no cached
+	 * range covers.
+	 */
+	public synchronized Lookup lookup (BigInteger n, BigInteger low, BigInteger high) {
+		final Lookup result = new Lookup();
+		final NavigableMap<BigInteger, Entry> cached = ranges.get(n);
+		BigInteger cursor = low;
+
+		if (cached != null) {
+			final BigInteger start = cached.floorKey(low);
+
+			for (Entry entry: cached.tailMap(start == null ? low : start, true).values()) {
+				if (entry.low.compareTo(high) > 0) {
+					break;
+				}
+				if (entry.high.compareTo(cursor) < 0) {
+					continue;
+				}
+
+				if (entry.low.compareTo(cursor) > 0) {
+					result.gaps.add(new Range(cursor, entry.low.subtract(BigInteger.ONE)));
+				}
+
+				for (BigInteger factor: decode(entry.factors)) {
+					if (factor.compareTo(low) >= 0 && factor.compareTo(high) <= 0) {
+						result.factors.add(factor);
+					}
+				}
+
+				usage.get(entry);
+				cursor = entry.high.add(BigInteger.ONE);
+			}
+		}
+
+		if (cursor.compareTo(high) <= 0) {
+			result.gaps.add(new Range(cursor, high));
+		}
+
+		if (result.gaps.isEmpty()) {
+			hits++;
+		} else {
+			misses++;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Caches the prime factors of n in [low, high], unless part of the range is cached already.
+	 * @param factors <i>all</i> the prime factors of n in [low, high], with multiplicity: those of a request which was
+	 *                cancelled must not be put.
+	 * @return true if the range was cached.
+	 */
+	public synchronized boolean put (BigInteger n, BigInteger low, BigInteger high, List<BigInteger> factors) {
+		NavigableMap<BigInteger, Entry> cached = ranges.get(n);
+		final List<BigInteger> sorted = new ArrayList<>(factors);
+		Map.Entry<BigInteger, Entry> before, after;
+		Entry entry;
+
+		if (cached == null) {
+			cached = new TreeMap<>();
+			ranges.put(n, cached);
+		}
+
+		before = cached.floorEntry(high);
+		if (before != null && before.getValue().high.compareTo(low) >= 0) {
+			return false; //Another thread computed an overlapping range meanwhile
+		}
+
+		Collections.sort(sorted);
+		entry = new Entry(n, low, high, encode(sorted));
+
+		//Since factors are sorted and ranges disjoint, the encodings of adjacent ranges can simply be concatenated
+		before = cached.lowerEntry(low);
+		if (before != null && before.getValue().high.add(BigInteger.ONE).equals(low)) {
+			remove(before.getValue());
+			entry = new Entry(n, before.getValue().low, high, concat(before.getValue().factors, entry.factors));
+		}
+
+		after = cached.higherEntry(high);
+		if (after != null && after.getValue().low.subtract(BigInteger.ONE).equals(high)) {
+			remove(after.getValue());
+			entry = new Entry(n, entry.low, after.getValue().high, concat(entry.factors, after.getValue().factors));
+		}
+
+		ranges.computeIfAbsent(n, k -> new TreeMap<>()).put(entry.low, entry);
+		usage.put(entry, entry);
+		bytes += entry.size();
+
+		while (bytes > capacityBytes && !usage.isEmpty()) {
+			remove(usage.keySet().iterator().next());
+		}
+
+		return usage.containsKey(entry);
+	}
+
+	/**
+	 * @return number of bytes the cached ranges are estimated to take.
+	 */
+	public synchronized long getBytes () {
+		return bytes;
+	}
+
+	/**
+	 * @return number of ranges cached, after merging adjacent ones.
+	 */
+	public synchronized int size () {
+		return usage.size();
+	}
+
+	/**
+	 * @return number of lookups answered by cached ranges alone.
+	 */
+	public synchronized long getHits () {
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups which left gaps to compute.
+	 */
+	public synchronized long getMisses () {
+		return misses;
+	}
+
+	@Override
+	public synchronized String toString () {
+		return String.format(
+				"%s, %d ranges, %d bytes, %d hits, %d misses",
+				RangeCache.class.getSimpleName(), usage.size(), bytes, hits, misses
+		);
+	}
+
+	private void remove (Entry entry) {
+		final NavigableMap<BigInteger, Entry> cached = ranges.get(entry.n);
+
+		cached.remove(entry.low);
+		if (cached.isEmpty()) {
+			ranges.remove(entry.n);
+		}
+
+		usage.remove(entry);
+		bytes -= entry.size();
+	}
+
+	/**
+	 * Encodes sorted factors as runs of equal ones, each run being its length followed by the length of the
+	 * two's-complement representation of its factor and the representation itself, lengths as unsigned varints.
+	 */
+	static byte[] encode (List<BigInteger> sorted) {
+		final List<byte[]> runs = new LinkedList<>();
+		final List<Integer> counts = new LinkedList<>();
+		int size = 0, count;
+		byte[] factor, result;
+
+		for (int i = 0; i < sorted.size(); i += count) {
+			count = 1;
+			while (i + count < sorted.size() && sorted.get(i + count).equals(sorted.get(i))) {
+				count++;
+			}
+
+			factor = sorted.get(i).toByteArray();
+			runs.add(factor);
+			counts.add(count);
+			size += varintSize(count) + varintSize(factor.length) + factor.length;
+		}
+
+		result = new byte[size];
+		size = 0;
+
+		while (!runs.isEmpty()) {
+			factor = runs.remove(0);
+			size = putVarint(result, size, counts.remove(0));
+			size = putVarint(result, size, factor.length);
+			System.arraycopy(factor, 0, result, size, factor.length);
+			size += factor.length;
+		}
+
+		return result;
+	}
+
+	static List<BigInteger> decode (byte[] encoded) {
+		final List<BigInteger> result = new LinkedList<>();
+		final int[] position = {0};
+		int count, length;
+		BigInteger factor;
+
+		while (position[0] < encoded.length) {
+			count = getVarint(encoded, position);
+			length = getVarint(encoded, position);
+			factor = new BigInteger(Arrays.copyOfRange(encoded, position[0], position[0] + length));
+			position[0] += length;
+
+			for (int i = 0; i < count; i++) {
+				result.add(factor);
+			}
+		}
+
+		return result;
+	}
+
+	private static byte[] concat (byte[] first, byte[] second) {
+		final byte[] result = new byte[first.length + second.length];
+
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+
+		return result;
+	}
+
+	private static int varintSize (int value) {
+		int result = 1;
+
+		while ((value >>>= 7) != 0) {
+			result++;
+		}
+
+		return result;
+	}
+
+	private static int putVarint (byte[] buffer, int position, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+
+		return position;
+	}
+
+	private static int getVarint (byte[] buffer, int[] position) {
+		int result = 0, shift = 0;
+		byte current;
+
+		do {
+			current = buffer[position[0]++];
+			result |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+
+		return result;
+	}
+
+	/**
+	 * A range [low, high] of numbers, both ends included.
+	 */
+	public static class Range {
+
+		private final BigInteger low, high;
+
+		public Range (BigInteger low, BigInteger high) {
+			this.low = low;
+			this.high = high;
+		}
+
+		public BigInteger getLowBound () {
+			return low;
+		}
+
+		public BigInteger getHighBound () {
+			return high;
+		}
+
+		@Override
+		public String toString () {
+			return String.format("[%s, %s]", low, high);
+		}
+
+	}
+
+	/**
+	 * The outcome of {@link RangeCache#lookup(BigInteger, BigInteger, BigInteger)}.
+	 */
+	public static class Lookup {
+
+		private final List<BigInteger> factors = new LinkedList<>();
+		private final List<Range> gaps = new LinkedList<>();
+
+		/**
+		 * @return the prime factors found in the cached parts of the range looked up, in increasing order.
+		 */
+		public List<BigInteger> getFactors () {
+			return factors;
+		}
+
+		/**
+		 * @return the parts of the range looked up which are not cached, in increasing order.
+		 */
+		public List<Range> getGaps () {
+			return gaps;
+		}
+
+	}
+
+	private static class Entry {
+
+		private final BigInteger n, low, high;
+		private final byte[] factors;
+
+		Entry (BigInteger n, BigInteger low, BigInteger high, byte[] factors) {
+			this.n = n;
+			this.low = low;
+			this.high = high;
+			this.factors = factors;
+		}
+
+		long size () {
+			return CONST_RANGE_OVERHEAD_BYTES + factors.length;
+		}
+
+	}
+
+}
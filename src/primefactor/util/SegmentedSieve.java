@@ -0,0 +1,254 @@
+package primefactor.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Streams the primes p such that low <= p <= high, in increasing order.<br>
+ * The range is sieved one window at a time, each window being a bitset of odd numbers sized to fit in the L1 data
+ * cache; therefore memory usage only depends on sqrt(high), never on the width of the range. Base primes are only
+ * computed up to the square root of the windows sieved so far, so that a sieve whose iteration stops early costs no
+ * more than the part of the range it went through.
+ */
+public class SegmentedSieve implements PrimitiveIterator.OfLong {
+
+	/**
+	 * Size in bytes of the bitset window sieved at a time.
+	 */
+	public static final int CONST_SEGMENT_BYTES = 1 << 15;
+	/**
+	 * Largest high bound a sieve can be built for. Base primes up to sqrt(high) are stored as ints.
+	 */
+	public static final long CONST_MAX_HIGH = (1L << 62) - 1;
+
+	private static final int CONST_SEGMENT_BITS = CONST_SEGMENT_BYTES * Byte.SIZE;
+	private static final int CONST_SIMPLE_SIEVE_LIMIT = 1 << 16;
+
+	/**
+	 * Odd base primes computed so far, shared between instances so that sieves over neighbouring ranges do not
+	 * recompute them.
+	 */
+	private static volatile BasePrimes sharedBasePrimes = new BasePrimes(0, new int[0]);
+
+	private final long high;
+	private BasePrimes basePrimes;
+	private final long[] segment = new long[CONST_SEGMENT_BITS / Long.SIZE];
+
+	/**
+	 * Odd number represented by the first bit of segment.
+	 */
+	private long segmentLow;
+	private int segmentLength;
+	/**
+	 * Index of the next bit of segment to inspect.
+	 */
+	private int cursor;
+	private long next;
+	private boolean hasNext;
+
+	/**
+	 * @param low minimum value a prime can take, must be >= 1.
+	 * @param high maximum value a prime can take, must be <= CONST_MAX_HIGH.
+	 */
+	public SegmentedSieve (long low, long high) {
+		if (low < 1 || high > CONST_MAX_HIGH) {
+			throw new IllegalArgumentException(
+					String.format(
+							"low and high parameters are not such that 1 <= low (%d), high (%d) <= %d",
+							low, high, CONST_MAX_HIGH
+					)
+			);
+		}
+
+		this.high = high;
+		this.basePrimes = sharedBasePrimes;
+
+		if (low <= 2 && 2 <= high) {
+			next = 2;
+			hasNext = true;
+		}
+
+		segmentLow = low | 1; //First odd number >= low
+		segmentLength = 0;
+		cursor = 0;
+
+		if (!hasNext) {
+			advance();
+		}
+	}
+
+	@Override
+	public boolean hasNext () {
+		return hasNext;
+	}
+
+	@Override
+	public long nextLong () {
+		final long result;
+
+		if (!hasNext) {
+			throw new NoSuchElementException();
+		}
+
+		result = next;
+		advance();
+
+		return result;
+	}
+
+	/**
+	 * Moves next onto the following prime, sieving new windows as needed.
+	 */
+	private void advance () {
+		int word, bit;
+		long unmarked;
+
+		hasNext = false;
+
+		while (true) {
+			while (cursor < segmentLength) {
+				word = cursor >>> 6;
+				unmarked = ~segment[word] & (-1L << (cursor & 63));
+
+				if (unmarked != 0) {
+					bit = (word << 6) + Long.numberOfTrailingZeros(unmarked);
+
+					if (bit >= segmentLength) {
+						break;
+					}
+
+					cursor = bit + 1;
+					next = segmentLow + 2L * bit;
+					hasNext = true;
+
+					return;
+				}
+
+				cursor = (word + 1) << 6;
+			}
+
+			//Move on to the following window, if any
+			segmentLow += 2L * segmentLength;
+
+			if (segmentLow > high) {
+				return;
+			}
+
+			sieveSegment();
+		}
+	}
+
+	/**
+	 * Marks the composites of the window starting at segmentLow. Bit i stands for segmentLow + 2i.
+	 */
+	private void sieveSegment () {
+		final long segmentHigh;
+		long multiple;
+
+		segmentLength = (int) Math.min(CONST_SEGMENT_BITS, (high - segmentLow) / 2 + 1);
+		segmentHigh = segmentLow + 2L * (segmentLength - 1);
+		cursor = 0;
+		Arrays.fill(segment, 0);
+
+		if (basePrimes.limit < BigMath.sqrt(segmentHigh)) {
+			//Grow geometrically, so that base primes are recomputed a logarithmic number of times at most
+			basePrimes = basePrimes(Math.min(Math.max(BigMath.sqrt(segmentHigh), 2 * basePrimes.limit), BigMath.sqrt(high)));
+		}
+
+		for (int p: basePrimes.primes) {
+			if ((long) p * p > segmentHigh) {
+				break;
+			}
+
+			//Smallest odd multiple of p which is >= max(p * p, segmentLow)
+			multiple = Math.max((long) p * p, (segmentLow + p - 1) / p * p);
+			if ((multiple & 1) == 0) {
+				multiple += p;
+			}
+
+			for (long i = (multiple - segmentLow) / 2; i < segmentLength; i += p) {
+				segment[(int) (i >>> 6)] |= 1L << i;
+			}
+		}
+
+		if (segmentLow == 1) {
+			segment[0] |= 1L; //1 is not a prime
+		}
+	}
+
+	/**
+	 * @return the odd primes p <= limit, possibly followed by larger ones when the shared cache already covers limit.
+	 * These are harmless since {@link SegmentedSieve#sieveSegment()} stops at the first p such that p * p exceeds the
+	 * window.
+	 */
+	private static BasePrimes basePrimes (long limit) {
+		final BasePrimes shared = sharedBasePrimes;
+		final BasePrimes result;
+
+		if (shared.limit < limit) {
+			result = new BasePrimes(
+					limit,
+					limit <= CONST_SIMPLE_SIEVE_LIMIT ? simpleSieve((int) limit) : collect(new SegmentedSieve(3, limit))
+			);
+
+			synchronized (SegmentedSieve.class) {
+				if (sharedBasePrimes.limit < limit) {
+					sharedBasePrimes = result;
+				}
+			}
+
+			return result;
+		}
+
+		return shared;
+	}
+
+	private static int[] simpleSieve (int limit) {
+		final boolean[] composite = new boolean[limit + 1];
+		int[] primes = new int[16];
+		int count = 0;
+
+		for (int i = 3; i <= limit; i += 2) {
+			if (!composite[i]) {
+				if (count == primes.length) {
+					primes = Arrays.copyOf(primes, count * 2);
+				}
+				primes[count++] = i;
+
+				for (long j = (long) i * i; j <= limit; j += 2 * i) {
+					composite[(int) j] = true;
+				}
+			}
+		}
+
+		return Arrays.copyOf(primes, count);
+	}
+
+	private static int[] collect (SegmentedSieve sieve) {
+		int[] primes = new int[1024];
+		int count = 0;
+
+		while (sieve.hasNext()) {
+			if (count == primes.length) {
+				primes = Arrays.copyOf(primes, count * 2);
+			}
+			primes[count++] = (int) sieve.nextLong();
+		}
+
+		return Arrays.copyOf(primes, count);
+	}
+
+	private static final class BasePrimes {
+
+		private final long limit;
+		private final int[] primes;
+
+		private BasePrimes (long limit, int[] primes) {
+			this.limit = limit;
+			this.primes = primes;
+		}
+
+	}
+
+}
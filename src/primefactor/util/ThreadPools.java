@@ -0,0 +1,88 @@
+package primefactor.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for tasks which spend most of their time blocked on I/O, such as reading from a connection.<br>
+ * Each task runs in a thread of its own: a virtual one when the system property "primefactor.threads.virtual" is true
+ * and the running JVM supports them, a daemon platform thread, reused once idle, otherwise. Virtual threads are looked
+ * up reflectively, so that this class still runs on JVMs which lack them. CPU bound work should rather be run on a
+ * bounded pool.
+ */
+public final class ThreadPools {
+
+	public static final String CONST_PROP_VIRTUAL = "primefactor.threads.virtual";
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor(), or null if the running JVM has no virtual threads.
+	 */
+	private static final Method newVirtualThreadPerTaskExecutor = lookupVirtual();
+
+	private static ExecutorService io;
+
+	private ThreadPools () {
+	}
+
+	/**
+	 * @return true if the executors returned run their tasks in virtual threads.
+	 */
+	public static boolean isVirtual () {
+		return newVirtualThreadPerTaskExecutor != null && Boolean.getBoolean(CONST_PROP_VIRTUAL);
+	}
+
+	/**
+	 * @param name prefix of the names of the platform threads started, if any.
+	 * @return a new executor running each task in a thread of its own, which is to be shut down once no longer used.
+	 */
+	public static ExecutorService newPerTaskExecutor (String name) {
+		if (isVirtual()) {
+			try {
+				return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				//Fall back to platform threads
+			}
+		}
+
+		return Executors.newCachedThreadPool(daemonThreadFactory(name));
+	}
+
+	/**
+	 * @return an executor created by {@link ThreadPools#newPerTaskExecutor(String)} the first time this method is
+	 * called, shared by the whole JVM and never shut down.
+	 */
+	public static synchronized ExecutorService io () {
+		if (io == null) {
+			io = newPerTaskExecutor("io");
+		}
+
+		return io;
+	}
+
+	/**
+	 * @return a factory of daemon threads named name-1, name-2 and so on.
+	 */
+	public static ThreadFactory daemonThreadFactory (final String name) {
+		final AtomicInteger threads = new AtomicInteger();
+
+		return task -> {
+			final Thread result = new Thread(task, String.format("%s-%d", name, threads.incrementAndGet()));
+
+			result.setDaemon(true);
+
+			return result;
+		};
+	}
+
+	private static Method lookupVirtual () {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+}
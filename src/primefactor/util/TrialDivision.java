@@ -0,0 +1,17 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A {@link FactoringAlgorithm} delegating to {@link BigMath#primeFactorsOf(BigInteger, BooleanSupplier)}.
+ */
+public class TrialDivision implements FactoringAlgorithm {
+
+	@Override
+	public List<BigInteger> primeFactorsOf (BigInteger n, BooleanSupplier cancelled) {
+		return BigMath.primeFactorsOf(n, cancelled);
+	}
+
+}
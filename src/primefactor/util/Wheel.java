@@ -0,0 +1,192 @@
+package primefactor.util;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Streams the candidate divisors c such that low <= c <= high, in increasing order: 2, 3, 5 and 7 followed by the
+ * numbers which none of them divides, found by turning a wheel of circumference 2 * 3 * 5 * 7 = 210.<br>
+ * Only 48 numbers out of every 210 are coprime with 210, so that about 77% of the range is skipped without computing
+ * anything, while every prime of the range is still yielded. The other candidates are composite, which callers must
+ * check for. Unlike a {@link SegmentedSieve}, a wheel costs nothing to set up, whatever low is: it is thus suited to
+ * narrow ranges far from 0, such as the slices of a partitioned range.
+ */
+public class Wheel implements PrimitiveIterator.OfLong {
+
+	public static final int CONST_CIRCUMFERENCE = 2 * 3 * 5 * 7;
+
+	private static final int[] CONST_BASIS = {2, 3, 5, 7};
+	/**
+	 * Numbers in [0, CONST_CIRCUMFERENCE) coprime with it, increasing.
+	 */
+	private static final int[] CONST_SPOKES = spokes();
+	/**
+	 * Index in CONST_SPOKES of the smallest spoke >= r, for every r in [0, CONST_CIRCUMFERENCE).
+	 */
+	private static final int[] CONST_SPOKE_INDEX = spokeIndex();
+	/**
+	 * First number past the basis which the wheel yields.
+	 */
+	private static final long CONST_MIN_SPOKE = CONST_SPOKES[1];
+
+	private final long high;
+	private int basis;
+	private int spoke;
+	private long next;
+
+	/**
+	 * @param low minimum value a candidate can take, must be >= 1.
+	 * @param high maximum value a candidate can take, must be < Long.MAX_VALUE - CONST_CIRCUMFERENCE.
+	 */
+	public Wheel (long low, long high) {
+		final long start = Math.max(low, CONST_MIN_SPOKE);
+
+		if (low < 1 || high >= Long.MAX_VALUE - CONST_CIRCUMFERENCE) {
+			throw new IllegalArgumentException(
+					String.format(
+							"low and high parameters are not such that 1 <= low (%d), high (%d) < %d",
+							low, high, Long.MAX_VALUE - CONST_CIRCUMFERENCE
+					)
+			);
+		}
+
+		this.high = high;
+
+		//Skip the basis primes below low
+		while (basis < CONST_BASIS.length && CONST_BASIS[basis] < low) {
+			basis++;
+		}
+
+		spoke = CONST_SPOKE_INDEX[(int) (start % CONST_CIRCUMFERENCE)];
+		next = start - start % CONST_CIRCUMFERENCE + CONST_SPOKES[spoke];
+	}
+
+	@Override
+	public boolean hasNext () {
+		return basis < CONST_BASIS.length ? CONST_BASIS[basis] <= high : next <= high;
+	}
+
+	@Override
+	public long nextLong () {
+		final long result;
+
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		if (basis < CONST_BASIS.length) {
+			return CONST_BASIS[basis++];
+		}
+
+		result = next;
+		next += gap(spoke);
+		spoke = (spoke + 1) % CONST_SPOKES.length;
+
+		return result;
+	}
+
+	/**
+	 * @return the distance from the spoke of index spoke to the following one, possibly on the next turn of the wheel.
+	 */
+	private static int gap (int spoke) {
+		if (spoke == CONST_SPOKES.length - 1) {
+			return CONST_CIRCUMFERENCE - CONST_SPOKES[spoke] + CONST_SPOKES[0];
+		}
+
+		return CONST_SPOKES[spoke + 1] - CONST_SPOKES[spoke];
+	}
+
+	private static int[] spokes () {
+		final int[] result = new int[48];
+		int count = 0;
+
+		for (int r = 0; r < CONST_CIRCUMFERENCE; r++) {
+			if (r % 2 != 0 && r % 3 != 0 && r % 5 != 0 && r % 7 != 0) {
+				result[count++] = r;
+			}
+		}
+
+		return result;
+	}
+
+	private static int[] spokeIndex () {
+		final int[] result = new int[CONST_CIRCUMFERENCE];
+
+		//CONST_CIRCUMFERENCE - 1 is itself a spoke, so that every r has one at or above it
+		for (int r = CONST_CIRCUMFERENCE - 1, spoke = CONST_SPOKES.length - 1; r >= 0; r--) {
+			if (spoke > 0 && CONST_SPOKES[spoke - 1] >= r) {
+				spoke--;
+			}
+			result[r] = spoke;
+		}
+
+		return result;
+	}
+
+	/**
+	 * The counterpart of {@link Wheel} for ranges past Long.MAX_VALUE. Candidates are computed by adding the gaps of the
+	 * wheel, so that no remainder is taken besides the one aligning the wheel to low.
+	 */
+	public static class OfBigInteger implements Iterator<BigInteger> {
+
+		private static final BigInteger CONST_BIG_CIRCUMFERENCE = BigInteger.valueOf(CONST_CIRCUMFERENCE);
+
+		private final BigInteger high;
+		private int basis;
+		private int spoke;
+		private BigInteger next;
+
+		/**
+		 * @param low minimum value a candidate can take, must be >= 1.
+		 */
+		public OfBigInteger (BigInteger low, BigInteger high) {
+			final BigInteger start = low.max(BigInteger.valueOf(CONST_MIN_SPOKE));
+			final int residue = start.mod(CONST_BIG_CIRCUMFERENCE).intValue();
+
+			if (low.signum() <= 0) {
+				throw new IllegalArgumentException(String.format("low parameter (%s) must be >= 1", low));
+			}
+
+			this.high = high;
+
+			while (basis < CONST_BASIS.length && BigInteger.valueOf(CONST_BASIS[basis]).compareTo(low) < 0) {
+				basis++;
+			}
+
+			spoke = CONST_SPOKE_INDEX[residue];
+			next = start.add(BigInteger.valueOf(CONST_SPOKES[spoke] - residue));
+		}
+
+		@Override
+		public boolean hasNext () {
+			if (basis < CONST_BASIS.length) {
+				return BigInteger.valueOf(CONST_BASIS[basis]).compareTo(high) <= 0;
+			}
+
+			return next.compareTo(high) <= 0;
+		}
+
+		@Override
+		public BigInteger next () {
+			final BigInteger result;
+
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			if (basis < CONST_BASIS.length) {
+				return BigInteger.valueOf(CONST_BASIS[basis++]);
+			}
+
+			result = next;
+			next = next.add(BigInteger.valueOf(gap(spoke)));
+			spoke = (spoke + 1) % CONST_SPOKES.length;
+
+			return result;
+		}
+
+	}
+
+}